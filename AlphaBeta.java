@@ -0,0 +1,455 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Depth-first alpha-beta search over the same evaluation as Strategy's minimax tree.
+ * Results of every interior node are kept in a transposition table, so a position
+ * reached by different move orders is only searched once, and the best move found
+ * for a position is tried first the next time it is searched.
+ * <p>
+ * With more than one thread the search runs Lazy SMP: helper threads search the same
+ * position concurrently, sharing only the transposition table, and their results speed
+ * up the main thread through the table. The move of the main thread is played.
+ * <p>
+ * When ProbCut parameters are given, interior nodes are first tested with a shallow
+ * search whose result predicts the deep one, and cut if the deep value is very unlikely
+ * to fall inside the window.
+ */
+public class AlphaBeta {
+    // Distinguishes the same disks with a different side to move
+    private static final long WHITE_TO_MOVE = 0x6a09e667f3bcc909L;
+
+    // Width of the null window used by the shallow ProbCut searches
+    private static final double CUT_WINDOW = 1e-3;
+
+    // Margin below the best root value within which a root move is searched exactly, to find ties
+    private static final double TIE_WINDOW = 1e-3;
+
+    // Nodes between two looks at the clock of a search with a time limit
+    private static final int CLOCK_NODES = 256;
+
+    private final Strategy strategy;
+    private final TranspositionTable table;
+    private final Worker[] workers;
+    private final ProbCut probCut;
+    private ExecutorService pool;
+
+    // Set by the main thread when it is done or told to stop, all threads abandon their search
+    private volatile boolean stopped;
+
+    /**
+     * Set to end a running search early, the move of the last finished depth is played
+     */
+    public volatile boolean stop;
+
+    /**
+     * Receives the best multiPv moves of the main thread after every finished depth, null
+     * for none. With multiPv above 1 the root keeps that many moves in the window, so their
+     * scores are exact.
+     */
+    public AnalysisListener listener;
+    public int multiPv = 1;
+
+    // Start of the running search, and the time at which it ends, 0 for none
+    private long start;
+    private long deadline;
+
+    /**
+     * Number of positions visited by all threads since the search was created
+     */
+    public long nodes;
+
+    /**
+     * Duration of the last search in milliseconds
+     */
+    public long elapsed;
+
+    public AlphaBeta(Strategy strategy, TranspositionTable table) {
+        this(strategy, table, 1, null);
+    }
+
+    /**
+     * @param strategy evaluation weights and point table
+     * @param table    transposition table shared by all threads
+     * @param threads  number of search threads
+     * @param probCut  selective search parameters, null to search every move to full depth
+     */
+    public AlphaBeta(Strategy strategy, TranspositionTable table, int threads, ProbCut probCut) {
+        this.strategy = strategy;
+        this.table = table;
+        this.probCut = probCut;
+        workers = new Worker[Math.max(1, threads)];
+        for (int i = 0; i < workers.length; i++)
+            workers[i] = new Worker(i);
+    }
+
+    /**
+     * Search for the best move of a player
+     *
+     * @param game  the current state of the game
+     * @param color the player who is making the decision
+     * @param depth number of plies to search
+     * @return the best move, not legal if the player has no move
+     */
+    public Move search(Game game, int color, int depth) {
+        return search(game, color, depth, 0);
+    }
+
+    /**
+     * Search for the best move of a player, deepening until a depth or a time limit. At the
+     * time limit the running depth is abandoned and the move of the last finished depth is
+     * played. The first depth is always finished, so there is a move to play.
+     *
+     * @param game   the current state of the game
+     * @param color  the player who is making the decision
+     * @param depth  most plies to search
+     * @param millis milliseconds the search may take, 0 for no limit
+     * @return the best move, not legal if the player has no move
+     */
+    public Move search(Game game, int color, int depth, long millis) {
+        start = System.currentTimeMillis();
+        deadline = millis > 0 ? start + millis : 0;
+        table.newSearch();
+        stopped = false;
+        for (Worker w : workers)
+            w.nodes = 0;
+
+        ArrayList<Future<?>> helpers = new ArrayList<>();
+        if (workers.length > 1) {
+            if (pool == null) {
+                pool = Executors.newFixedThreadPool(workers.length - 1, r -> {
+                    Thread t = new Thread(r, "alphabeta-helper");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            for (int i = 1; i < workers.length; i++) {
+                Worker helper = workers[i];
+                helpers.add(pool.submit(() -> helper.iterate(game, color, depth)));
+            }
+        }
+        Move bestMove = workers[0].iterate(game, color, depth);
+
+        stopped = true;
+        for (Future<?> f : helpers) {
+            try {
+                f.get();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        stop = false;
+        elapsed = System.currentTimeMillis() - start;
+        for (Worker w : workers)
+            nodes += w.nodes;
+        return bestMove;
+    }
+
+    /**
+     * Full-window value of a position searched to a fixed depth on the calling thread
+     *
+     * @param game  the state of the game
+     * @param color the player to move
+     * @param depth number of plies to search
+     * @return value from the point of view of color
+     */
+    public double evaluate(Game game, int color, int depth) {
+        table.newSearch();
+        stopped = false;
+        return workers[0].value(game, color, depth, -strategy.INFINITE, strategy.INFINITE, 0);
+    }
+
+    /**
+     * Nodes and nodes per second of every thread during the last search
+     *
+     * @return one line per thread
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        long total = 0;
+        for (Worker w : workers) {
+            sb.append("Thread ").append(w.id).append(": ").append(w.nodes).append(" nodes, ")
+                .append(w.nodes * 1000 / Math.max(1, elapsed)).append(" nodes/s\n");
+            total += w.nodes;
+        }
+        sb.append("Total: ").append(total).append(" nodes in ").append(elapsed).append(" ms, ")
+            .append(total * 1000 / Math.max(1, elapsed)).append(" nodes/s");
+        return sb.toString();
+    }
+
+    /**
+     * One search thread, counting its own nodes
+     */
+    private class Worker {
+        final int id;
+        long nodes;
+
+        // Whether the main thread finished a depth of the running search, and its snapshot
+        boolean finished;
+        AnalysisSnapshot lastSnapshot;
+
+        Worker(int id) {
+            this.id = id;
+        }
+
+        Move iterate(Game game, int color, int depth) {
+            Move bestMove = new Move();
+            finished = false;
+            lastSnapshot = null;
+            // Shallower iterations fill the table with best moves that order the deeper ones.
+            // Every other helper starts one ply deeper so the threads spread over depths.
+            for (int d = 1 + (id & 1); d <= depth && !stopped; d++) {
+                Move move = searchRoot(game, color, d, d == depth);
+                if (move != null) {
+                    bestMove = move;
+                    finished = true;
+                }
+            }
+            // A stopped search ends with the snapshot of its last finished depth
+            if (id == 0 && stopped && listener != null && lastSnapshot != null && !lastSnapshot.last)
+                listener.snapshot(lastSnapshot.asLast());
+            return bestMove;
+        }
+
+        private Move searchRoot(Game game, int color, int depth, boolean last) {
+            nodes++;
+            long key = key(game, color);
+            ArrayList<Move> moves = orderedMoves(game, color, table.probe(key));
+            // Helpers start from different root moves so they do not just repeat the main thread
+            if (id > 0 && moves.size() > 1)
+                Collections.rotate(moves.subList(1, moves.size()), id);
+            int lines = id == 0 && listener != null ? Math.max(1, multiPv) : 1;
+            double[] values = new double[moves.size()];
+            double alpha = -strategy.INFINITE;
+            Move bestMove = new Move();
+            for (int i = 0; i < moves.size(); i++) {
+                Move move = moves.get(i);
+                // A move only has to beat the lines-th best so far, the best one with one line
+                double floor = i < lines ? -strategy.INFINITE : kthLargest(values, i, lines);
+                // Of equal moves the first in row-major order is played, as the original tree
+                // search did, so a move before the best one also has to be searched for a tie
+                boolean before = bestMove.legal
+                    && BoardBits.square(move.y, move.x) < BoardBits.square(bestMove.y, bestMove.x);
+                if (before && floor > -strategy.INFINITE)
+                    floor -= TIE_WINDOW;
+                double value = -value(child(game, color, move), Game.toggleTurn(color), depth - 1,
+                    -strategy.INFINITE, -floor, move.points);
+                if (stopped)
+                    return null;
+                values[i] = value;
+                if (!bestMove.legal || value > alpha || value == alpha && before) {
+                    alpha = value;
+                    bestMove = move;
+                }
+            }
+            if (bestMove.legal)
+                table.store(key, depth, TranspositionTable.EXACT, alpha, BoardBits.square(bestMove.y, bestMove.x));
+            if (id == 0 && listener != null && bestMove.legal) {
+                lastSnapshot = snapshot(game, color, moves, values, lines, depth, last);
+                listener.snapshot(lastSnapshot);
+            }
+            return bestMove;
+        }
+
+        private AnalysisSnapshot snapshot(Game game, int color, ArrayList<Move> moves, double[] values, int lines,
+                                          int depth, boolean last) {
+            Integer[] order = new Integer[moves.size()];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, (a, b) -> Double.compare(values[b], values[a]));
+            ArrayList<ArrayList<String>> pvs = new ArrayList<>();
+            double[] scores = new double[Math.min(lines, order.length)];
+            for (int i = 0; i < scores.length; i++) {
+                pvs.add(principalVariation(game, color, moves.get(order[i]), depth));
+                scores[i] = values[order[i]];
+            }
+            long total = 0;
+            for (Worker w : workers)
+                total += w.nodes;
+            return AnalysisSnapshot.of(pvs, scores, depth, total, System.currentTimeMillis() - start, last);
+        }
+
+        /**
+         * Negamax value of a position for the side to move
+         *
+         * @param game       the state of the game
+         * @param turn       the player to move
+         * @param depth      remaining plies
+         * @param alpha      lower bound of the window
+         * @param beta       upper bound of the window
+         * @param lastPoints points scored by the move that led to this position
+         * @return value from the point of view of turn
+         */
+        private double value(Game game, int turn, int depth, double alpha, double beta, int lastPoints) {
+            nodes++;
+            // The main thread gives up the running depth on request or at the time limit, once it
+            // has a move to play. The clock is read every CLOCK_NODES nodes.
+            if (id == 0 && finished && (stop || deadline > 0 && nodes % CLOCK_NODES == 0
+                && System.currentTimeMillis() >= deadline))
+                stopped = true;
+            if (stopped)
+                return 0;
+            int opponent = Game.toggleTurn(turn);
+            int mobility = strategy.mobilityCheck(game, turn);
+            if (mobility == 0 && strategy.mobilityCheck(game, opponent) == 0)
+                return endValue(game, turn);
+            // Leaves are scored for the player who just moved, by the points of that move
+            // and the mobility left to the side to move
+            if (depth <= 0)
+                return -(lastPoints * strategy.config.positionWeight - mobility * strategy.config.mobilityWeight);
+            if (mobility == 0)
+                return -value(game, opponent, depth - 1, -beta, -alpha, 0);
+
+            // Leaf scores depend on the move played, so only interior nodes are stored
+            long key = key(game, turn);
+            long entry = table.probe(key);
+            double alphaOrig = alpha;
+            if (entry != 0 && TranspositionTable.depth(entry) >= depth) {
+                double score = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT)
+                    return score;
+                if (bound == TranspositionTable.LOWER && score > alpha)
+                    alpha = score;
+                else if (bound == TranspositionTable.UPPER && score < beta)
+                    beta = score;
+                if (alpha >= beta)
+                    return score;
+            }
+
+            if (probCut != null) {
+                int phase = ProbCut.phase(game);
+                if (probCut.has(phase, depth)) {
+                    // The deep value is predicted as slope * shallow + intercept, so test the
+                    // shallow search against the window bounds mapped through the model
+                    int shallow = probCut.shallow[phase][depth];
+                    double a = probCut.slope[phase][depth];
+                    double b = probCut.intercept[phase][depth];
+                    double margin = probCut.threshold[phase] * probCut.sigma[phase][depth];
+                    if (beta < strategy.INFINITE) {
+                        double high = (beta + margin - b) / a;
+                        if (value(game, turn, shallow, high - CUT_WINDOW, high, lastPoints) >= high)
+                            return beta;
+                    }
+                    if (alpha > -strategy.INFINITE) {
+                        double low = (alpha - margin - b) / a;
+                        if (value(game, turn, shallow, low, low + CUT_WINDOW, lastPoints) <= low)
+                            return alpha;
+                    }
+                }
+            }
+
+            double best = -strategy.INFINITE;
+            int bestSquare = TranspositionTable.NO_MOVE;
+            for (Move move : orderedMoves(game, turn, entry)) {
+                double v = -value(child(game, turn, move), opponent, depth - 1, -beta, -alpha, move.points);
+                if (v > best) {
+                    best = v;
+                    bestSquare = BoardBits.square(move.y, move.x);
+                }
+                if (v > alpha)
+                    alpha = v;
+                if (alpha >= beta)
+                    break;
+            }
+
+            // An abandoned search has no reliable result to store
+            if (stopped)
+                return 0;
+            int bound = best <= alphaOrig ? TranspositionTable.UPPER
+                : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+            table.store(key, depth, bound, best, bestSquare);
+            return best;
+        }
+    }
+
+    /**
+     * The k-th largest of the first n values
+     */
+    private static double kthLargest(double[] values, int n, int k) {
+        double[] sorted = Arrays.copyOf(values, n);
+        Arrays.sort(sorted);
+        return sorted[n - k];
+    }
+
+    /**
+     * A root move followed by the best moves stored in the table, as far as the search went
+     *
+     * @param game  the position of the root
+     * @param color the player to move at the root
+     * @param move  the root move
+     * @param depth depth of the search
+     * @return the moves, passes included
+     */
+    private ArrayList<String> principalVariation(Game game, int color, Move move, int depth) {
+        ArrayList<String> pv = new ArrayList<>();
+        pv.add(Engine.squareName(move.y, move.x));
+        Game position = child(game, color, move);
+        int turn = Game.toggleTurn(color);
+        for (int ply = 1; ply < depth; ply++) {
+            if (!position.hasLegalMoves(turn)) {
+                if (!position.hasLegalMoves(Game.toggleTurn(turn)))
+                    break;
+                pv.add("pass");
+                turn = Game.toggleTurn(turn);
+                continue;
+            }
+            long entry = table.probe(key(position, turn));
+            int square = entry != 0 ? TranspositionTable.move(entry) : TranspositionTable.NO_MOVE;
+            if (square == TranspositionTable.NO_MOVE)
+                break;
+            Move next = position.pointMove(square / Game.BOARD_SIZE + 1, square % Game.BOARD_SIZE + 1, turn, false,
+                Strategy.pointTable);
+            if (!next.legal)
+                break;
+            pv.add(Engine.squareName(next.y, next.x));
+            position = child(position, turn, next);
+            turn = Game.toggleTurn(turn);
+        }
+        return pv;
+    }
+
+    /**
+     * Value of a finished game for the side to move. A tie counts as a win for black, as in
+     * the original tree search, whose end check gave a tie the value of Game.BLACK.
+     */
+    private double endValue(Game game, int turn) {
+        int winner = game.getWinner();
+        if (winner == Game.EMPTY)
+            winner = Game.BLACK;
+        return winner == turn ? strategy.config.endWeight : -strategy.config.endWeight;
+    }
+
+    /**
+     * All legal moves of a player, the best move of a stored entry first
+     */
+    private ArrayList<Move> orderedMoves(Game game, int turn, long entry) {
+        ArrayList<Move> moves = new ArrayList<>();
+        int hashMove = entry != 0 ? TranspositionTable.move(entry) : TranspositionTable.NO_MOVE;
+        for (int i = 1; i <= Game.BOARD_SIZE; i++) {
+            for (int j = 1; j <= Game.BOARD_SIZE; j++) {
+                Move move = game.pointMove(i, j, turn, false, Strategy.pointTable);
+                if (move.legal) {
+                    if (BoardBits.square(i, j) == hashMove)
+                        moves.add(0, move);
+                    else
+                        moves.add(move);
+                }
+            }
+        }
+        return moves;
+    }
+
+    private Game child(Game game, int turn, Move move) {
+        return strategy.makeMove(new Game(game), false, turn, move);
+    }
+
+    private static long key(Game game, int turn) {
+        long key = BoardBits.hash(BoardBits.toBits(game.board, Game.BLACK), BoardBits.toBits(game.board, Game.WHITE));
+        return turn == Game.WHITE ? key ^ WHITE_TO_MOVE : key;
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Receives the best moves of a running search, see MonteCarlo.listener and AlphaBeta.listener
+ */
+public interface AnalysisListener {
+    /**
+     * Called on the search thread between simulations or depths, so it should return quickly
+     *
+     * @param snapshot the best moves found so far
+     */
+    void snapshot(AnalysisSnapshot snapshot);
+}
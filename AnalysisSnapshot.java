@@ -0,0 +1,177 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+
+/**
+ * The best moves of a search at one moment, best first, for reviewing games and comparing
+ * engines without playing them. Monte Carlo lines have the simulations, the win rate with its
+ * 95% confidence interval and the principal variation of a move; minimax lines have the
+ * depth, the score and the principal variation.
+ */
+public class AnalysisSnapshot {
+    // Normal quantile of the 95% confidence interval
+    private static final double Z = 1.96;
+
+    /**
+     * One candidate move
+     */
+    public static class Line {
+        public final String move;
+
+        /**
+         * Simulations of the move, 0 for minimax
+         */
+        public final long visits;
+
+        /**
+         * Share of the simulations won by the player to move, with the bounds of its Wilson
+         * score interval, NaN for minimax
+         */
+        public final double winRate;
+        public final double low;
+        public final double high;
+
+        /**
+         * Minimax value for the player to move, NaN for Monte Carlo
+         */
+        public final double score;
+
+        /**
+         * The move and the best replies after it
+         */
+        public final ArrayList<String> pv;
+
+        private Line(String move, long visits, double winRate, double low, double high, double score,
+                     ArrayList<String> pv) {
+            this.move = move;
+            this.visits = visits;
+            this.winRate = winRate;
+            this.low = low;
+            this.high = high;
+            this.score = score;
+            this.pv = pv;
+        }
+    }
+
+    /**
+     * Milliseconds since the search started
+     */
+    public final long elapsed;
+
+    /**
+     * Depth of the last finished minimax iteration, 0 for Monte Carlo
+     */
+    public final int depth;
+
+    /**
+     * Simulations of the Monte Carlo search or nodes of the minimax search so far
+     */
+    public final long work;
+
+    /**
+     * Whether this is the result of the finished search
+     */
+    public final boolean last;
+
+    public final ArrayList<Line> lines;
+
+    private AnalysisSnapshot(long elapsed, int depth, long work, boolean last, ArrayList<Line> lines) {
+        this.elapsed = elapsed;
+        this.depth = depth;
+        this.work = work;
+        this.last = last;
+        this.lines = lines;
+    }
+
+    /**
+     * Snapshot of a Monte Carlo tree, ordered by win rate as MCNode.getMostWinningChild picks
+     * the move. The principal variation follows the most simulated child.
+     *
+     * @param root    root of the search
+     * @param count   most moves to give
+     * @param elapsed milliseconds since the search started
+     * @param last    whether the search is finished
+     * @return the snapshot
+     */
+    static AnalysisSnapshot of(MCNode root, int count, long elapsed, boolean last) {
+        ArrayList<MCNode> children = new ArrayList<>();
+        for (MCNode child : root.children)
+            if (child.totalSim > 0)
+                children.add(child);
+        int turn = root.turn;
+        children.sort(Comparator.comparingDouble((MCNode c) -> -c.wins[turn] / c.totalSim));
+        ArrayList<Line> lines = new ArrayList<>();
+        for (MCNode child : children.subList(0, Math.min(count, children.size()))) {
+            ArrayList<String> pv = new ArrayList<>();
+            pv.add(squareName(root.squareOf(child)));
+            for (MCNode node = child, next; (next = mostSimulated(node)) != null; node = next)
+                pv.add(squareName(node.squareOf(next)));
+            int n = child.totalSim;
+            double p = child.wins[turn] / n;
+            // Wilson score interval, which stays inside [0, 1] for few simulations
+            double center = (p + Z * Z / (2 * n)) / (1 + Z * Z / n);
+            double half = Z * Math.sqrt(p * (1 - p) / n + Z * Z / (4.0 * n * n)) / (1 + Z * Z / n);
+            lines.add(new Line(pv.get(0), n, p, center - half, center + half, Double.NaN, pv));
+        }
+        return new AnalysisSnapshot(elapsed, 0, root.totalSim, last, lines);
+    }
+
+    private static MCNode mostSimulated(MCNode node) {
+        MCNode best = null;
+        for (MCNode child : node.children)
+            if (child.totalSim > 0 && (best == null || child.totalSim > best.totalSim))
+                best = child;
+        return best;
+    }
+
+    /**
+     * Snapshot of a finished minimax iteration
+     *
+     * @param pvs     principal variation of every move, best first
+     * @param scores  value of every move
+     * @param depth   depth of the iteration
+     * @param nodes   nodes searched so far
+     * @param elapsed milliseconds since the search started
+     * @param last    whether the search is finished
+     * @return the snapshot
+     */
+    static AnalysisSnapshot of(ArrayList<ArrayList<String>> pvs, double[] scores, int depth, long nodes,
+                               long elapsed, boolean last) {
+        ArrayList<Line> lines = new ArrayList<>();
+        for (int i = 0; i < pvs.size(); i++)
+            lines.add(new Line(pvs.get(i).get(0), 0, Double.NaN, Double.NaN, Double.NaN, scores[i], pvs.get(i)));
+        return new AnalysisSnapshot(elapsed, depth, nodes, last, lines);
+    }
+
+    /**
+     * The same snapshot marked as the result of the finished search
+     */
+    AnalysisSnapshot asLast() {
+        return new AnalysisSnapshot(elapsed, depth, work, true, lines);
+    }
+
+    /**
+     * Name of a square given as a bit index of BoardBits, such as "d3"
+     */
+    static String squareName(int square) {
+        return Engine.squareName(square / Game.BOARD_SIZE + 1, square % Game.BOARD_SIZE + 1);
+    }
+
+    /**
+     * The snapshot in the notation of the Engine protocol, one line per move
+     */
+    public ArrayList<String> format() {
+        ArrayList<String> out = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
+            StringBuilder sb = new StringBuilder("multipv " + (i + 1) + " move " + line.move);
+            if (depth > 0)
+                sb.append(String.format(" depth %d score %.2f nodes %d", depth, line.score, work));
+            else
+                sb.append(String.format(" visits %d winrate %.4f low %.4f high %.4f", line.visits, line.winRate,
+                    line.low, line.high));
+            sb.append(" time ").append(elapsed).append(" pv ").append(String.join(" ", line.pv));
+            out.add(sb.toString());
+        }
+        return out;
+    }
+}
@@ -0,0 +1,429 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Monte Carlo tree of one position kept in a memory-mapped file, for analysis that runs far
+ * longer than a move of a game and survives the JVM. Nodes are fixed-size records outside
+ * the heap, so the tree is limited by the disk and not by the heap, and the garbage collector
+ * never sees it. The file can be closed, reopened and searched further any number of times.
+ * <p>
+ * A node record holds its simulations, the wins of each color, the move leading to it, the
+ * player to move and where its children are. The children of a node are allocated together
+ * when it is expanded, so a node only needs the index of its first child and their number.
+ * Node 0 is the root. Positions are not stored but replayed from the root on the way down.
+ * Unlike the search of MonteCarlo the tree does not merge transpositions, since a node of a
+ * file tree has one parent.
+ * <p>
+ * Children are written before their parent links to them and the node count is written
+ * before the children, so a JVM that dies at any point leaves a tree that reopens; the
+ * operating system writes the mapped pages out. checkpoint also forces them to the disk.
+ * <p>
+ * Run as java AnalysisTree FILE SECONDS [BOARD SIDE]<br>
+ * The position is needed to create the file and is read from an existing file. The search
+ * prints the candidate moves every few seconds, saves the file every minute and stops on
+ * interrupt. See Engine for the position notation. -Dothello.expParam sets the exploration
+ * and -Dothello.maxNodes caps the nodes of the file, without a limit by default.
+ */
+public class AnalysisTree implements AutoCloseable {
+    private static final int MAGIC = 0x4f544d54;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4096;
+
+    // Header layout: magic, version, board size, player to move at the root, node count, root board
+    private static final int BOARD_SIZE_BYTE = 8;
+    private static final int ROOT_TURN = 9;
+    private static final int NODE_COUNT = 16;
+    private static final int ROOT_BOARD = 64;
+
+    // Node layout: simulations, black wins, white wins, first child, square of the move,
+    // number of children, player to move
+    private static final int RECORD_SIZE = 40;
+    private static final int VISITS = 0;
+    private static final int BLACK_WINS = 8;
+    private static final int WHITE_WINS = 16;
+    private static final int FIRST_CHILD = 24;
+    private static final int SQUARE = 32;
+    private static final int CHILD_COUNT = 34;
+    private static final int TURN = 36;
+
+    // Square of a pass
+    private static final int PASS = -1;
+
+    // The file is mapped in segments, since one mapped buffer holds at most 2 GB
+    private static final int SEGMENT_BITS = 20;
+    private static final int SEGMENT_NODES = 1 << SEGMENT_BITS;
+    private static final long SEGMENT_SIZE = (long) SEGMENT_NODES * RECORD_SIZE;
+
+    private static final int REPORT_MILLIS = 5000;
+    private static final int CHECKPOINT_MILLIS = 60000;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final ArrayList<MappedByteBuffer> segments = new ArrayList<>();
+    private long nodes;
+
+    private final Game root = new Game();
+    private final int rootTurn;
+
+    // Runs the simulations from the leaves, with its configuration, evaluator and random moves
+    private final MonteCarlo engine;
+
+    // Position and nodes of the running simulation
+    private final Game scratch = new Game();
+    private final long[] path = new long[2 * BoardBits.SQUARES + 2];
+
+    /**
+     * Set to end a running search, it stays set so that later searches return at once
+     */
+    public volatile boolean stop;
+
+    /**
+     * Open a tree file, creating it for a position if it does not exist
+     *
+     * @param file   the tree file
+     * @param game   the position to analyze, only needed to create the file
+     * @param turn   the player to move
+     * @param engine the engine whose configuration and simulations the search uses
+     * @throws IOException if the file cannot be opened, or is not a tree of this position
+     */
+    public AnalysisTree(Path file, Game game, int turn, MonteCarlo engine) throws IOException {
+        this.engine = engine;
+        boolean create = !Files.exists(file) || Files.size(file) == 0;
+        if (create && game == null)
+            throw new IOException(file + " does not exist, a position is needed to create it");
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (create) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.put(BOARD_SIZE_BYTE, (byte) Game.BOARD_SIZE);
+            header.put(ROOT_TURN, (byte) turn);
+            byte[] board = boardString(game).getBytes();
+            for (int k = 0; k < board.length; k++)
+                header.put(ROOT_BOARD + k, board[k]);
+            nodes = 1;
+            clear(0, PASS, turn);
+            header.putLong(NODE_COUNT, nodes);
+            checkpoint();
+        } else {
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+                throw new IOException("Not an analysis tree");
+            if (header.get(BOARD_SIZE_BYTE) != Game.BOARD_SIZE)
+                throw new IOException("Analysis tree is for " + header.get(BOARD_SIZE_BYTE) + " x "
+                    + header.get(BOARD_SIZE_BYTE) + " boards");
+            nodes = header.getLong(NODE_COUNT);
+        }
+        byte[] board = new byte[BoardBits.SQUARES];
+        for (int k = 0; k < board.length; k++)
+            board[k] = header.get(ROOT_BOARD + k);
+        rootTurn = Engine.parsePosition(root, new String(board), header.get(ROOT_TURN) == Game.BLACK ? "*" : "O");
+        if (game != null && (turn != rootTurn || !boardString(game).equals(new String(board))))
+            throw new IOException("Analysis tree is for another position");
+    }
+
+    private static String boardString(Game game) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= Game.BOARD_SIZE; i++)
+            for (int j = 1; j <= Game.BOARD_SIZE; j++)
+                sb.append(game.board[i][j] == Game.BLACK ? '*' : game.board[i][j] == Game.WHITE ? 'O' : '-');
+        return sb.toString();
+    }
+
+    /**
+     * Simulate from the root until the time runs out, stop is set or the root is simulated
+     * config.simGames times more
+     *
+     * @param millis thinking time in milliseconds
+     * @return simulations run
+     */
+    public long search(long millis) {
+        long end = System.currentTimeMillis() + millis;
+        long limit = visits(0) + engine.config.simGames;
+        long simulations = 0;
+        while (!stop && System.currentTimeMillis() < end && visits(0) < limit) {
+            simulate();
+            simulations++;
+        }
+        return simulations;
+    }
+
+    /**
+     * One simulation: select a leaf by UCT, expand it if it was simulated before, play a random
+     * game from it and add the result to every node on the way
+     */
+    private void simulate() {
+        for (int i = 0; i < Game.HEIGHT; i++)
+            System.arraycopy(root.board[i], 0, scratch.board[i], 0, Game.WIDTH);
+        long node = 0;
+        int depth = 0;
+        path[depth++] = node;
+        while (childCount(node) > 0) {
+            node = select(node);
+            play(node);
+            path[depth++] = node;
+        }
+        double[] result;
+        if (node != 0 && visits(node) == 0) {
+            result = rollout(node);
+        } else {
+            int expanded = expand(node);
+            if (expanded < 0) {
+                result = MCNode.result(scratch.getWinner());
+            } else if (expanded == 0) {
+                // The file is at its node limit, keep simulating from the leaf
+                result = rollout(node);
+            } else {
+                node = firstChild(node);
+                play(node);
+                path[depth++] = node;
+                result = rollout(node);
+            }
+        }
+        for (int i = 0; i < depth; i++) {
+            MappedByteBuffer segment = segment(path[i]);
+            int offset = offset(path[i]);
+            segment.putLong(offset + VISITS, segment.getLong(offset + VISITS) + 1);
+            segment.putDouble(offset + BLACK_WINS, segment.getDouble(offset + BLACK_WINS) + result[Game.BLACK]);
+            segment.putDouble(offset + WHITE_WINS, segment.getDouble(offset + WHITE_WINS) + result[Game.WHITE]);
+        }
+    }
+
+    private long select(long node) {
+        int turn = turn(node);
+        double logVisits = Math.log(visits(node));
+        long first = firstChild(node);
+        long best = first;
+        double bestUct = -1;
+        for (long child = first; child < first + childCount(node); child++) {
+            long n = visits(child);
+            if (n == 0)
+                return child;
+            double uct = wins(child, turn) / n + engine.config.expParam * Math.sqrt(logVisits / n);
+            if (uct > bestUct) {
+                bestUct = uct;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Add the children of a leaf for the moves of the position of the running simulation
+     *
+     * @return number of children, 0 if the file has no room for them and -1 if the game is over
+     */
+    private int expand(long node) {
+        int turn = turn(node);
+        int opponent = Game.toggleTurn(turn);
+        ArrayList<int[]> moves = scratch.getLegalMoves(turn);
+        int count = moves.isEmpty() ? 1 : moves.size();
+        if (moves.isEmpty() && scratch.getLegalMoves(opponent).isEmpty())
+            return -1;
+        if (engine.config.maxNodes > 0 && nodes + count > engine.config.maxNodes)
+            return 0;
+        // Claim the records, write them, then link them to the parent
+        long first = nodes;
+        nodes += count;
+        header.putLong(NODE_COUNT, nodes);
+        if (moves.isEmpty()) {
+            clear(first, PASS, opponent);
+        } else {
+            for (int k = 0; k < count; k++)
+                clear(first + k, BoardBits.square(moves.get(k)[0], moves.get(k)[1]), opponent);
+        }
+        MappedByteBuffer segment = segment(node);
+        int offset = offset(node);
+        segment.putLong(offset + FIRST_CHILD, first);
+        segment.putShort(offset + CHILD_COUNT, (short) count);
+        return count;
+    }
+
+    private void clear(long node, int square, int turn) {
+        MappedByteBuffer segment = segment(node);
+        int offset = offset(node);
+        for (int i = 0; i < RECORD_SIZE; i += 8)
+            segment.putLong(offset + i, 0);
+        segment.putShort(offset + SQUARE, (short) square);
+        segment.put(offset + TURN, (byte) turn);
+    }
+
+    /**
+     * Play the move leading to a node on the position of the running simulation
+     */
+    private void play(long node) {
+        int square = square(node);
+        if (square != PASS)
+            scratch.placeDisk(square / Game.BOARD_SIZE + 1, square % Game.BOARD_SIZE + 1, Game.toggleTurn(turn(node)));
+    }
+
+    private double[] rollout(long node) {
+        return new MCNode(scratch, turn(node)).rollout(engine);
+    }
+
+    private MappedByteBuffer segment(long node) {
+        int k = (int) (node >>> SEGMENT_BITS);
+        while (segments.size() <= k) {
+            try {
+                // Mapping past the end of the file makes it longer
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE + segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot extend analysis tree", e);
+            }
+        }
+        return segments.get(k);
+    }
+
+    private static int offset(long node) {
+        return (int) (node & (SEGMENT_NODES - 1)) * RECORD_SIZE;
+    }
+
+    public long visits(long node) {
+        return segment(node).getLong(offset(node) + VISITS);
+    }
+
+    /**
+     * Wins of a color in the simulations through a node, fractional for cut off simulations
+     */
+    public double wins(long node, int color) {
+        return segment(node).getDouble(offset(node) + (color == Game.BLACK ? BLACK_WINS : WHITE_WINS));
+    }
+
+    public long firstChild(long node) {
+        return segment(node).getLong(offset(node) + FIRST_CHILD);
+    }
+
+    public int childCount(long node) {
+        return segment(node).getShort(offset(node) + CHILD_COUNT);
+    }
+
+    /**
+     * Bit index of the square of the move leading to a node, see BoardBits, -1 for a pass
+     */
+    public int square(long node) {
+        return segment(node).getShort(offset(node) + SQUARE);
+    }
+
+    /**
+     * The player to move at a node
+     */
+    public int turn(long node) {
+        return segment(node).get(offset(node) + TURN);
+    }
+
+    /**
+     * Nodes in the file, including the root
+     */
+    public long size() {
+        return nodes;
+    }
+
+    /**
+     * Name of the move leading to a node, such as "d3" or "pass"
+     */
+    public String moveName(long node) {
+        int square = square(node);
+        return square == PASS ? "pass" : Engine.squareName(square / Game.BOARD_SIZE + 1, square % Game.BOARD_SIZE + 1);
+    }
+
+    /**
+     * The moves of the root with their simulations and win rates, most simulated first, each
+     * with the line of most simulated moves that follows it
+     *
+     * @param count most moves to show
+     * @return one line per move
+     */
+    public ArrayList<String> candidates(int count) {
+        ArrayList<Long> children = new ArrayList<>();
+        for (long child = firstChild(0); child < firstChild(0) + childCount(0); child++)
+            children.add(child);
+        children.sort((a, b) -> Long.compare(visits(b), visits(a)));
+        ArrayList<String> lines = new ArrayList<>();
+        for (long child : children.subList(0, Math.min(count, children.size()))) {
+            long n = visits(child);
+            StringBuilder line = new StringBuilder(String.format("%-5s %10d sims %6.2f%%  pv", moveName(child), n,
+                n == 0 ? 0 : wins(child, rootTurn) * 100 / n));
+            for (long node = child; node >= 0 && visits(node) > 0; node = mostVisitedChild(node))
+                line.append(' ').append(moveName(node));
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    private long mostVisitedChild(long node) {
+        long best = -1;
+        for (long child = firstChild(node); child < firstChild(node) + childCount(node); child++)
+            if (best < 0 || visits(child) > visits(best))
+                best = child;
+        return best;
+    }
+
+    /**
+     * Write the tree out to the disk
+     */
+    public void checkpoint() {
+        header.putLong(NODE_COUNT, nodes);
+        header.force();
+        for (MappedByteBuffer segment : segments)
+            segment.force();
+    }
+
+    public void close() throws IOException {
+        checkpoint();
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 2 && args.length != 4) {
+            System.out.println("Usage: java AnalysisTree FILE SECONDS [BOARD SIDE]");
+            System.exit(0);
+        }
+        Game game = null;
+        int turn = Game.BLACK;
+        if (args.length == 4) {
+            game = new Game();
+            turn = Engine.parsePosition(game, args[2], args[3]);
+        }
+        EngineConfig config = new EngineConfig();
+        config.expParam = Double.parseDouble(System.getProperty("othello.expParam", Double.toString(config.expParam)));
+        config.simGames = Integer.MAX_VALUE;
+        MonteCarlo engine = new MonteCarlo(config);
+        engine.setSeed(Seeds.BASE);
+        long end = System.currentTimeMillis() + Long.parseLong(args[1]) * 1000;
+        CountDownLatch done = new CountDownLatch(1);
+        try (AnalysisTree tree = new AnalysisTree(Path.of(args[0]), game, turn, engine)) {
+            // On interrupt the search stops and the tree is saved before the JVM exits
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                tree.stop = true;
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    // Exit without waiting
+                }
+            }));
+            System.out.println("seed " + Seeds.BASE + "  nodes " + tree.size() + "  simulations " + tree.visits(0));
+            long lastCheckpoint = System.currentTimeMillis();
+            long start = lastCheckpoint;
+            long simulations = 0;
+            while (System.currentTimeMillis() < end && !tree.stop) {
+                simulations += tree.search(Math.min(REPORT_MILLIS, end - System.currentTimeMillis()));
+                if (System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_MILLIS) {
+                    tree.checkpoint();
+                    lastCheckpoint = System.currentTimeMillis();
+                }
+                System.out.printf("%.0f simulations per second, nodes %d, simulations %d%n",
+                    simulations * 1000.0 / Math.max(1, System.currentTimeMillis() - start), tree.size(), tree.visits(0));
+                for (String line : tree.candidates(5))
+                    System.out.println("  " + line);
+            }
+        } finally {
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Analyzes every position of a file with one engine on all cores and writes one CSV row per
+ * position, in the order of the input. A position is a line in the notation of Engine, the
+ * board followed by the side to move; empty lines and lines starting with '#' are skipped.
+ * <p>
+ * The columns are the number of the position, the position, the move of the engine, the win
+ * rate of the Monte Carlo engines or the score of Minimax, the simulations or nodes searched
+ * and the milliseconds taken. Rows are written as soon as all positions before them are done,
+ * and OUTPUT.progress records how many are complete. A restarted run cuts the output back to
+ * that point and goes on with the next position. The seed of the run is kept there as well,
+ * and every position is seeded from it and its number.
+ * <p>
+ * Both sides to move get the same budget. With a simulation budget such as simGames=5000 and
+ * no thinking time, a search does not depend on the speed of the machine and a resumed run
+ * writes the same rows as an uninterrupted one.
+ * <p>
+ * Every thread has its own engine. A Monte Carlo engine without a node limit gets one of
+ * DEFAULT_MAX_NODES nodes, so the memory of a thread is bounded, and a thread waits instead of
+ * running more than WINDOW positions ahead of the output.
+ * <p>
+ * Run as java BatchAnalysis ENGINE INPUT OUTPUT [threads]<br>
+ * The engine is written as in Match, such as MonteCarlo:simGames=5000 or Minimax:maxDepth=6.
+ */
+public class BatchAnalysis {
+    private static final String HEADER = "position,board,side,move,winrate,score,work,millis";
+
+    // Node limit of Monte Carlo engines that have none
+    private static final int DEFAULT_MAX_NODES = 100000;
+
+    // Positions a thread may run ahead of the output, per thread
+    private static final int WINDOW = 4;
+
+    // Print the progress every this many positions
+    private static final int REPORT_INTERVAL = 100;
+
+    private final AIType type;
+    private final EngineConfig config;
+    private final BufferedReader input;
+    private final Path output;
+    private final FileChannel out;
+    private final long seed;
+    private final int threads;
+
+    // Positions read from the input, positions written to the output and bytes written
+    private long read;
+    private long written;
+    private long bytes;
+
+    // Rows finished out of order, by position number
+    private final TreeMap<Long, String> pending = new TreeMap<>();
+    private IOException failure;
+
+    /**
+     * Open the input and the output, skipping the positions the output already holds
+     *
+     * @param engine  engine as in Match
+     * @param input   file of positions
+     * @param output  CSV file of results
+     * @param threads positions analyzed at the same time
+     * @throws IOException if a file cannot be opened
+     */
+    public BatchAnalysis(String engine, Path input, Path output, int threads) throws IOException {
+        type = Match.type(engine);
+        config = Match.config(engine);
+        if (config.maxNodes == 0)
+            config.maxNodes = DEFAULT_MAX_NODES;
+        // Every position gets the same budget whichever side is to move. Left at the defaults,
+        // the thinking times are lifted for a simulation budget and otherwise both take black's.
+        EngineConfig defaults = new EngineConfig();
+        if (config.simTimeBlack == defaults.simTimeBlack && config.simTimeWhite == defaults.simTimeWhite)
+            config.simTimeBlack = config.simTimeWhite =
+                config.simGames != defaults.simGames ? Integer.MAX_VALUE : defaults.simTimeBlack;
+        else if (config.simTimeBlack != config.simTimeWhite)
+            throw new IllegalArgumentException("one thinking time for both sides, set simTime");
+        this.output = output;
+        this.threads = threads;
+        Properties progress = new Properties();
+        if (Files.exists(progressPath())) {
+            try (Reader in = Files.newBufferedReader(progressPath())) {
+                progress.load(in);
+            }
+        }
+        written = Long.parseLong(progress.getProperty("positions", "0"));
+        bytes = Long.parseLong(progress.getProperty("bytes", "0"));
+        seed = Long.parseLong(progress.getProperty("seed", Long.toString(Seeds.BASE)));
+        out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // Rows past the last recorded one may be cut off in the middle
+        out.truncate(bytes);
+        out.position(bytes);
+        if (bytes == 0)
+            append(HEADER + "\n");
+        this.input = Files.newBufferedReader(input);
+        while (read < written && nextPosition() != null) ;
+    }
+
+    /**
+     * Analyze the rest of the input
+     *
+     * @throws IOException if reading or writing fails
+     */
+    public void run() throws IOException, InterruptedException {
+        long skipped = written;
+        long start = System.currentTimeMillis();
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(this::work, "batch-analysis-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers)
+            worker.join();
+        input.close();
+        out.close();
+        if (failure != null)
+            throw failure;
+        double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+        System.out.printf("%d positions, %d analyzed in %.1f s, %.2f per second%n", written, written - skipped,
+            seconds, (written - skipped) / seconds);
+    }
+
+    private void work() {
+        Strategy strategy = new Strategy(config);
+        MonteCarlo monteCarlo = new MonteCarlo(config);
+        AnalysisSnapshot[] last = new AnalysisSnapshot[1];
+        AnalysisListener listener = snapshot -> {
+            if (snapshot.last)
+                last[0] = snapshot;
+        };
+        monteCarlo.listener = listener;
+        monteCarlo.snapshotMillis = Integer.MAX_VALUE;
+        // A forced move gets a win rate from a full search instead of a single simulation
+        monteCarlo.stopOnForcedMove = false;
+        if (type == AIType.Minimax)
+            strategy.alphaBeta().listener = listener;
+        Player player = new Player(strategy, type, Game.BLACK);
+        while (true) {
+            long number;
+            String line;
+            synchronized (this) {
+                while (failure == null && read >= written + (long) WINDOW * threads)
+                    waitForOutput();
+                if (failure != null)
+                    return;
+                try {
+                    line = nextPosition();
+                } catch (IOException e) {
+                    fail(e);
+                    return;
+                }
+                if (line == null)
+                    return;
+                number = read - 1;
+            }
+            String[] fields = line.trim().split("\\s+");
+            String row;
+            try {
+                if (fields.length != 2)
+                    throw new IllegalArgumentException("expected a board and a side to move");
+                Game game = new Game();
+                int turn = Engine.parsePosition(game, fields[0], fields[1]);
+                long positionSeed = Seeds.derive(seed, number);
+                monteCarlo.setSeed(positionSeed);
+                strategy.setSeed(positionSeed);
+                last[0] = null;
+                long begin = System.currentTimeMillis();
+                String result = analyze(game, turn, strategy, monteCarlo, player, last);
+                row = number + "," + fields[0] + "," + fields[1] + "," + result + ","
+                    + (System.currentTimeMillis() - begin);
+            } catch (IllegalArgumentException e) {
+                fail(new IOException("position " + number + ": " + e.getMessage()));
+                return;
+            } catch (RuntimeException e) {
+                // Any failure must reach the other threads, which wait for this position
+                fail(new IOException("position " + number + ": " + e, e));
+                return;
+            }
+            finish(number, row);
+        }
+    }
+
+    /**
+     * Move, win rate, score and work of one position
+     */
+    private String analyze(Game game, int turn, Strategy strategy, MonteCarlo monteCarlo, Player player,
+                           AnalysisSnapshot[] last) {
+        if (!game.hasLegalMoves(turn))
+            return (game.hasLegalMoves(Game.toggleTurn(turn)) ? "pass" : "end") + ",,,0";
+        switch (type) {
+            case MonteCarlo:
+            case NaiveMonteCarlo:
+                monteCarlo.search(game, turn, type == AIType.NaiveMonteCarlo);
+                break;
+            case Minimax:
+                strategy.alphaBeta().search(game, turn, config.maxDepth);
+                break;
+            default:
+                int[] move = Game.findMove(Util.deepCopy(game.board), player.strategy(new Game(game), turn).board);
+                return Engine.squareName(move[0], move[1]) + ",,,0";
+        }
+        if (last[0] == null || last[0].lines.isEmpty())
+            throw new IllegalStateException("the search gave no result");
+        AnalysisSnapshot.Line best = last[0].lines.get(0);
+        return best.move + "," + (Double.isNaN(best.winRate) ? "" : String.format("%.4f", best.winRate)) + ","
+            + (Double.isNaN(best.score) ? "" : String.format("%.2f", best.score)) + "," + last[0].work;
+    }
+
+    /**
+     * Next position of the input, null at its end
+     */
+    private String nextPosition() throws IOException {
+        String line;
+        while ((line = input.readLine()) != null) {
+            if (!line.isBlank() && !line.startsWith("#")) {
+                read++;
+                return line;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Keep a finished row and write every row whose predecessors are all written
+     */
+    private synchronized void finish(long number, String row) {
+        pending.put(number, row);
+        try {
+            boolean wrote = false;
+            while (!pending.isEmpty() && pending.firstKey() == written) {
+                append(pending.pollFirstEntry().getValue() + "\n");
+                written++;
+                wrote = true;
+                if (written % REPORT_INTERVAL == 0)
+                    System.out.println(written + " positions done");
+            }
+            if (wrote)
+                saveProgress();
+        } catch (IOException e) {
+            fail(e);
+        }
+        notifyAll();
+    }
+
+    private void append(String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining())
+            out.write(buffer);
+        bytes = out.position();
+    }
+
+    private void saveProgress() throws IOException {
+        Properties progress = new Properties();
+        progress.setProperty("positions", Long.toString(written));
+        progress.setProperty("bytes", Long.toString(bytes));
+        progress.setProperty("seed", Long.toString(seed));
+        Path tmp = output.resolveSibling(output.getFileName() + ".progress.tmp");
+        try (Writer w = Files.newBufferedWriter(tmp)) {
+            progress.store(w, "Complete positions and bytes in the output");
+        }
+        Files.move(tmp, progressPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private synchronized void fail(IOException e) {
+        if (failure == null)
+            failure = e;
+        notifyAll();
+    }
+
+    private void waitForOutput() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(new IOException("interrupted"));
+        }
+    }
+
+    private Path progressPath() {
+        return output.resolveSibling(output.getFileName() + ".progress");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3 || args.length > 4) {
+            System.out.println("Usage: java BatchAnalysis ENGINE INPUT OUTPUT [threads]");
+            System.out.println("An engine is an AIType with optional constants, such as MonteCarlo:simGames=5000");
+            System.exit(0);
+        }
+        Warmup.run(System.out);
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        BatchAnalysis batch = new BatchAnalysis(args[0], Path.of(args[1]), Path.of(args[2]), threads);
+        System.out.println("seed " + batch.seed);
+        batch.run();
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Many independent 8 x 8 positions advanced together, for workloads that play random games
+ * on many boards without a search per board. The boards are kept as parallel arrays of
+ * bitboards, own[i] for the player to move on board i and opp[i] for the other player, and
+ * every step generates the moves of all boards in one pass of a BatchKernel.
+ * <p>
+ * The kernel is VectorBatchKernel when it was built and the JVM runs with
+ * --add-modules jdk.incubator.vector, see vector/VectorBatchKernel.java, and
+ * ScalarBatchKernel otherwise. -Dothello.batchKernel=scalar forces the scalar kernel.
+ * <p>
+ * Run as java BatchBoards [boards] [seconds] to measure random playouts per second.
+ */
+public class BatchBoards {
+    /**
+     * Kernel shared by all batches, the kernels keep no state
+     */
+    public static final BatchKernel KERNEL = kernel();
+
+    /**
+     * Number of boards
+     */
+    public final int size;
+
+    public final long[] own;
+    public final long[] opp;
+
+    /**
+     * Player to move on each board
+     */
+    public final int[] turn;
+
+    /**
+     * Legal moves of the player to move, as of the last step
+     */
+    public final long[] moves;
+
+    /**
+     * Boards whose game has ended
+     */
+    public final boolean[] over;
+
+    // Move picked on each board in the current step, 0 for a pass
+    private final long[] chosen;
+
+    // Whether the last step on a board was a pass
+    private final boolean[] passed;
+
+    // Boards still being played
+    private int active;
+
+    /**
+     * A batch of boards in the starting position, black to move
+     *
+     * @param size number of boards
+     */
+    public BatchBoards(int size) {
+        if (Game.BOARD_SIZE != 8)
+            throw new IllegalStateException("BatchBoards only plays 8 x 8 boards");
+        this.size = size;
+        own = new long[size];
+        opp = new long[size];
+        turn = new int[size];
+        moves = new long[size];
+        over = new boolean[size];
+        chosen = new long[size];
+        passed = new boolean[size];
+        // Every board counts as over until it gets a position
+        Arrays.fill(over, true);
+        Game start = new Game();
+        start.init();
+        for (int i = 0; i < size; i++)
+            set(i, start, Game.BLACK);
+    }
+
+    private static BatchKernel kernel() {
+        if (!"scalar".equals(System.getProperty("othello.batchKernel"))) {
+            try {
+                return (BatchKernel) Class.forName("VectorBatchKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // The vector kernel was not built, or the incubator module is not loaded
+            }
+        }
+        return new ScalarBatchKernel();
+    }
+
+    /**
+     * Put a position on a board
+     *
+     * @param i    index of the board
+     * @param game the position
+     * @param turn the player to move
+     */
+    public void set(int i, Game game, int turn) {
+        long black = BitBoard.toBits(game.board, Game.BLACK);
+        long white = BitBoard.toBits(game.board, Game.WHITE);
+        own[i] = turn == Game.BLACK ? black : white;
+        opp[i] = turn == Game.BLACK ? white : black;
+        this.turn[i] = turn;
+        if (over[i])
+            active++;
+        over[i] = false;
+        passed[i] = false;
+    }
+
+    /**
+     * Advance every board that is not over by one ply, a random legal move or a pass. A board
+     * is over when both players have passed in a row.
+     *
+     * @param random source of the random moves
+     * @return number of boards still being played
+     */
+    public int step(SplittableRandom random) {
+        KERNEL.legalMoves(own, opp, moves, size);
+        for (int i = 0; i < size; i++) {
+            chosen[i] = 0;
+            if (over[i])
+                continue;
+            if (moves[i] == 0) {
+                if (passed[i]) {
+                    over[i] = true;
+                    active--;
+                    continue;
+                }
+                passed[i] = true;
+            } else {
+                passed[i] = false;
+                chosen[i] = randomBit(moves[i], random);
+            }
+        }
+        KERNEL.play(own, opp, chosen, size);
+        for (int i = 0; i < size; i++) {
+            if (over[i])
+                continue;
+            long swap = own[i];
+            own[i] = opp[i];
+            opp[i] = swap;
+            turn[i] = Game.toggleTurn(turn[i]);
+        }
+        return active;
+    }
+
+    /**
+     * Play random moves on all boards in lockstep until every game is over
+     *
+     * @param random source of the random moves
+     */
+    public void playout(SplittableRandom random) {
+        while (step(random) > 0) ;
+    }
+
+    public long black(int i) {
+        return turn[i] == Game.BLACK ? own[i] : opp[i];
+    }
+
+    public long white(int i) {
+        return turn[i] == Game.WHITE ? own[i] : opp[i];
+    }
+
+    /**
+     * @param i index of a board
+     * @return the color with more disks on the board, EMPTY for a tie
+     */
+    public int winner(int i) {
+        int black = Long.bitCount(black(i));
+        int white = Long.bitCount(white(i));
+        return black > white ? Game.BLACK : white > black ? Game.WHITE : Game.EMPTY;
+    }
+
+    private static long randomBit(long bits, SplittableRandom random) {
+        for (int k = random.nextInt(Long.bitCount(bits)); k > 0; k--)
+            bits &= bits - 1;
+        return Long.lowestOneBit(bits);
+    }
+
+    public static void main(String[] args) {
+        int boards = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        SplittableRandom random = new SplittableRandom(Seeds.BASE);
+        System.out.println("kernel " + KERNEL.getClass().getName() + "  seed " + Seeds.BASE);
+        int[] wins = new int[Game.PLAYER_SIZE + 1];
+        long games = 0;
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        while (System.nanoTime() < end) {
+            BatchBoards batch = new BatchBoards(boards);
+            batch.playout(random);
+            for (int i = 0; i < boards; i++)
+                wins[batch.winner(i)]++;
+            games += boards;
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d playouts in %.1f s, %.0f per second, black/white/tie %d/%d/%d%n", games, elapsed,
+            games / elapsed, wins[Game.BLACK], wins[Game.WHITE], wins[Game.EMPTY]);
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Bitboard operations on many 8 x 8 boards at once, see BatchBoards. Board i is own[i]
+ * for the player to move and opp[i] for the other player.
+ */
+public interface BatchKernel {
+    /**
+     * Legal moves of the player to move on every board
+     *
+     * @param own   disks of the player to move
+     * @param opp   disks of the other player
+     * @param moves receives the legal moves of each board
+     * @param n     number of boards
+     */
+    void legalMoves(long[] own, long[] opp, long[] moves, int n);
+
+    /**
+     * Play one move on every board and flip the disks it captures
+     *
+     * @param own  disks of the player to move, the move and the flipped disks are added
+     * @param opp  disks of the other player, the flipped disks are removed
+     * @param move bit of the legal move of each board, 0 to leave a board as it is
+     * @param n    number of boards
+     */
+    void play(long[] own, long[] opp, long[] move, int n);
+}
@@ -0,0 +1,316 @@
+/**
+ * Bit-level helpers for an 8 x 8 board stored as two longs, one per color.
+ * Square (row, col) of the padded game matrix maps to bit (row - 1) * 8 + (col - 1),
+ * so every byte of a long is one row of the board.
+ */
+public class BitBoard {
+    /**
+     * Number of board symmetries (4 rotations times 2 reflections)
+     */
+    public static final int SYMMETRIES = 8;
+
+    private static final long FILE_A = 0x0101010101010101L;
+    private static final long FILE_H = 0x8080808080808080L;
+    private static final long RANK_1 = 0x00000000000000ffL;
+    private static final long RANK_8 = 0xff00000000000000L;
+
+    // Every row, column, diagonal and anti-diagonal of the board, used to find full lines
+    private static final long[] ROWS = new long[8];
+    private static final long[] COLUMNS = new long[8];
+    private static final long[] DIAGONALS = new long[15];
+    private static final long[] ANTI_DIAGONALS = new long[15];
+
+    static {
+        for (int r = 0; r < 8; r++) {
+            for (int c = 0; c < 8; c++) {
+                long bit = 1L << (r * 8 + c);
+                ROWS[r] |= bit;
+                COLUMNS[c] |= bit;
+                DIAGONALS[r - c + 7] |= bit;
+                ANTI_DIAGONALS[r + c] |= bit;
+            }
+        }
+    }
+
+    private static final long K1 = 0x5555555555555555L;
+    private static final long K2 = 0x3333333333333333L;
+    private static final long K4 = 0x0f0f0f0f0f0f0f0fL;
+
+    /**
+     * Collect the squares of one color into a bitboard
+     *
+     * @param board game matrix including the off-board frame
+     * @param color color of the disks to collect
+     * @return bitboard of the disks of that color
+     */
+    public static long toBits(int[][] board, int color) {
+        long bits = 0;
+        for (int i = 1; i <= Game.BOARD_SIZE; i++)
+            for (int j = 1; j <= Game.BOARD_SIZE; j++)
+                if (board[i][j] == color)
+                    bits |= 1L << square(i, j);
+        return bits;
+    }
+
+    /**
+     * Bit index of a square of the game matrix
+     */
+    public static int square(int row, int col) {
+        return (row - 1) * 8 + (col - 1);
+    }
+
+    // Shifts of the 8 directions and the squares a shifted bit may land on without wrapping
+    // around a row: east, west, south, north, south-east, north-west, south-west, north-east
+    static final int[] SHIFTS = {1, -1, 8, -8, 9, -9, 7, -7};
+    static final long[] SHIFT_MASKS = {~FILE_A, ~FILE_H, -1L, -1L, ~FILE_A, ~FILE_H, ~FILE_H, ~FILE_A};
+
+    private static long shift(long b, int direction) {
+        int s = SHIFTS[direction];
+        return (s > 0 ? b << s : b >>> -s) & SHIFT_MASKS[direction];
+    }
+
+    /**
+     * Legal moves of a player
+     *
+     * @param own bitboard of the player to move
+     * @param opp bitboard of the other player
+     * @return bitboard of the squares the player can move to
+     */
+    public static long legalMoves(long own, long opp) {
+        long empty = ~(own | opp);
+        long moves = 0;
+        for (int d = 0; d < SHIFTS.length; d++) {
+            // Runs of opponent disks next to an own disk, then the empty square past them
+            long run = shift(own, d) & opp;
+            for (int i = 0; i < 5; i++)
+                run |= shift(run, d) & opp;
+            moves |= shift(run, d) & empty;
+        }
+        return moves;
+    }
+
+    /**
+     * Disks flipped by a move
+     *
+     * @param own    bitboard of the player making the move
+     * @param opp    bitboard of the other player
+     * @param square bit index of the move, a legal move of own
+     * @return bitboard of the opponent disks that change color
+     */
+    public static long flips(long own, long opp, int square) {
+        long move = 1L << square;
+        long flips = 0;
+        for (int d = 0; d < SHIFTS.length; d++) {
+            long run = shift(move, d) & opp;
+            for (int i = 0; i < 5; i++)
+                run |= shift(run, d) & opp;
+            // The run only flips if an own disk closes it
+            if ((shift(run, d) & own) != 0)
+                flips |= run;
+        }
+        return flips;
+    }
+
+    /**
+     * Swap the rows of the board (top becomes bottom)
+     */
+    public static long flipVertical(long b) {
+        return Long.reverseBytes(b);
+    }
+
+    /**
+     * Swap the columns of the board (left becomes right)
+     */
+    public static long mirrorHorizontal(long b) {
+        b = ((b >>> 1) & K1) | ((b & K1) << 1);
+        b = ((b >>> 2) & K2) | ((b & K2) << 2);
+        b = ((b >>> 4) & K4) | ((b & K4) << 4);
+        return b;
+    }
+
+    /**
+     * Transpose the board along its main diagonal, (row, col) becomes (col, row)
+     */
+    public static long flipDiagonal(long b) {
+        long t;
+        t = 0x0f0f0f0f00000000L & (b ^ (b << 28));
+        b ^= t ^ (t >>> 28);
+        t = 0x3333000033330000L & (b ^ (b << 14));
+        b ^= t ^ (t >>> 14);
+        t = 0x5500550055005500L & (b ^ (b << 7));
+        b ^= t ^ (t >>> 7);
+        return b;
+    }
+
+    /**
+     * Apply one of the 8 board symmetries. Bit 2 of the transform transposes,
+     * bit 1 flips vertically and bit 0 mirrors horizontally, in that order.
+     *
+     * @param b         bitboard
+     * @param transform symmetry index in [0, 8)
+     * @return transformed bitboard
+     */
+    public static long transform(long b, int transform) {
+        if ((transform & 4) != 0)
+            b = flipDiagonal(b);
+        if ((transform & 2) != 0)
+            b = flipVertical(b);
+        if ((transform & 1) != 0)
+            b = mirrorHorizontal(b);
+        return b;
+    }
+
+    /**
+     * Map a bit index through the same symmetry as {@link #transform(long, int)}
+     *
+     * @param square    bit index in [0, 64)
+     * @param transform symmetry index in [0, 8)
+     * @return bit index of the square after the transform
+     */
+    public static int transformSquare(int square, int transform) {
+        int r = square >>> 3;
+        int c = square & 7;
+        if ((transform & 4) != 0) {
+            int t = r;
+            r = c;
+            c = t;
+        }
+        if ((transform & 2) != 0)
+            r = 7 - r;
+        if ((transform & 1) != 0)
+            c = 7 - c;
+        return r * 8 + c;
+    }
+
+    /**
+     * Map a bit index of a canonical position back to the original orientation
+     *
+     * @param square    bit index in the canonical orientation
+     * @param transform symmetry index returned by {@link #canonicalize}
+     * @return bit index in the original orientation
+     */
+    public static int inverseSquare(int square, int transform) {
+        int r = square >>> 3;
+        int c = square & 7;
+        if ((transform & 1) != 0)
+            c = 7 - c;
+        if ((transform & 2) != 0)
+            r = 7 - r;
+        if ((transform & 4) != 0) {
+            int t = r;
+            r = c;
+            c = t;
+        }
+        return r * 8 + c;
+    }
+
+    /**
+     * Find the canonical form of a position under the 8 board symmetries, which is the
+     * orientation with the smallest (black, white) pair. Nothing is allocated, the result
+     * is written into the caller's array.
+     *
+     * @param black bitboard of black disks
+     * @param white bitboard of white disks
+     * @param out   receives the canonical black bitboard at 0 and white bitboard at 1
+     * @return the transform that maps the position to its canonical form
+     */
+    public static int canonicalize(long black, long white, long[] out) {
+        long bestBlack = black;
+        long bestWhite = white;
+        int best = 0;
+        for (int t = 1; t < SYMMETRIES; t++) {
+            long b = transform(black, t);
+            if (b > bestBlack)
+                continue;
+            long w = transform(white, t);
+            if (b < bestBlack || w < bestWhite) {
+                bestBlack = b;
+                bestWhite = w;
+                best = t;
+            }
+        }
+        out[0] = bestBlack;
+        out[1] = bestWhite;
+        return best;
+    }
+
+    /**
+     * Disks that can never be flipped again. A disk is stable when, along each of the four
+     * lines through it, the line is full or the disk borders the edge or a stable disk of
+     * its own color. This finds all stable corners and edges and most interior stable disks,
+     * and never reports an unstable one.
+     *
+     * @param own  bitboard of the disks to check
+     * @param opp  bitboard of the other color
+     * @return bitboard of the stable disks of own
+     */
+    public static long stable(long own, long opp) {
+        long filled = own | opp;
+        long fullRows = full(filled, ROWS);
+        long fullColumns = full(filled, COLUMNS);
+        long fullDiagonals = full(filled, DIAGONALS);
+        long fullAntiDiagonals = full(filled, ANTI_DIAGONALS);
+
+        long stable = 0;
+        while (true) {
+            // Squares whose neighbor in a direction is off the board or a stable disk
+            long east = FILE_H | (stable >>> 1);
+            long west = FILE_A | (stable << 1);
+            long north = RANK_1 | (stable << 8);
+            long south = RANK_8 | (stable >>> 8);
+            long northEast = RANK_1 | FILE_H | (stable << 7);
+            long southWest = RANK_8 | FILE_A | (stable >>> 7);
+            long northWest = RANK_1 | FILE_A | (stable << 9);
+            long southEast = RANK_8 | FILE_H | (stable >>> 9);
+            long next = own
+                & (fullRows | east | west)
+                & (fullColumns | north | south)
+                & (fullDiagonals | northWest | southEast)
+                & (fullAntiDiagonals | northEast | southWest);
+            if (next == stable)
+                return stable;
+            stable = next;
+        }
+    }
+
+    /**
+     * Winner of a position that is decided by stable disks alone
+     *
+     * @param black bitboard of black disks
+     * @param white bitboard of white disks
+     * @return the color with more than half of the board stable, -1 if there is none
+     */
+    public static int decidedWinner(long black, long white) {
+        int half = 32;
+        if (Long.bitCount(black) > half && Long.bitCount(stable(black, white)) > half)
+            return Game.BLACK;
+        if (Long.bitCount(white) > half && Long.bitCount(stable(white, black)) > half)
+            return Game.WHITE;
+        return -1;
+    }
+
+    private static long full(long filled, long[] lines) {
+        long full = 0;
+        for (long line : lines)
+            if ((filled & line) == line)
+                full |= line;
+        return full;
+    }
+
+    /**
+     * 64-bit hash of a position
+     *
+     * @param black bitboard of black disks
+     * @param white bitboard of white disks
+     * @return hash key
+     */
+    public static long hash(long black, long white) {
+        return mix(black) ^ mix(white ^ 0x9e3779b97f4a7c15L) * 31;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,355 @@
+import java.util.Arrays;
+
+/**
+ * Bitboards for any of the supported board sizes. One color is a long[] of WORDS words,
+ * square (row, col) of the padded game matrix is bit (row - 1) * N + (col - 1), counted
+ * from bit 0 of word 0, and the bits past the last square are always 0.
+ * <p>
+ * Moves are generated with shifts of whole bitboards in the 8 directions, as on the
+ * 8 x 8 board. Boards that fit in one word use plain longs; bigger boards shift
+ * across the words. The 8 x 8 board uses the routines of BitBoard wherever there is one.
+ */
+public class BoardBits {
+    /**
+     * Side of the board
+     */
+    public static final int N = Game.BOARD_SIZE;
+
+    /**
+     * Squares of the board
+     */
+    public static final int SQUARES = N * N;
+
+    /**
+     * Longs per color
+     */
+    public static final int WORDS = (SQUARES + 63) / 64;
+
+    // Row and column steps of the 8 directions, opposite directions are d and d ^ 1:
+    // east, west, south, north, south-east, north-west, south-west, north-east
+    private static final int[] ROW_STEPS = {0, 0, 1, -1, 1, -1, 1, -1};
+    private static final int[] COL_STEPS = {1, -1, 0, 0, 1, -1, -1, 1};
+
+    // Bit shifts of the 8 directions
+    private static final int[] SHIFTS = new int[ROW_STEPS.length];
+
+    // Squares that a bit can reach in one step in each direction without wrapping around a row
+    private static final long[][] TARGETS = new long[SHIFTS.length][];
+
+    // Squares whose neighbor in each direction is off the board
+    private static final long[][] EDGES = new long[SHIFTS.length][];
+
+    // All squares of the board
+    private static final long[] BOARD = new long[WORDS];
+
+    // Rows, columns, diagonals and anti-diagonals, for finding full lines
+    private static final long[][] ROWS = new long[N][WORDS];
+    private static final long[][] COLUMNS = new long[N][WORDS];
+    private static final long[][] DIAGONALS = new long[2 * N - 1][WORDS];
+    private static final long[][] ANTI_DIAGONALS = new long[2 * N - 1][WORDS];
+
+    // Square that every square goes to under each of the 8 symmetries, see BitBoard.transform
+    private static final int[][] SYMMETRY = new int[BitBoard.SYMMETRIES][SQUARES];
+
+    static {
+        for (int d = 0; d < SHIFTS.length; d++) {
+            SHIFTS[d] = ROW_STEPS[d] * N + COL_STEPS[d];
+            TARGETS[d] = new long[WORDS];
+            EDGES[d] = new long[WORDS];
+        }
+        for (int r = 0; r < N; r++) {
+            for (int c = 0; c < N; c++) {
+                int square = r * N + c;
+                set(BOARD, square);
+                set(ROWS[r], square);
+                set(COLUMNS[c], square);
+                set(DIAGONALS[r - c + N - 1], square);
+                set(ANTI_DIAGONALS[r + c], square);
+                for (int d = 0; d < SHIFTS.length; d++) {
+                    // A bit arriving here came from one step back, the neighbor is one step ahead
+                    if (onBoard(r - ROW_STEPS[d], c - COL_STEPS[d]))
+                        set(TARGETS[d], square);
+                    if (!onBoard(r + ROW_STEPS[d], c + COL_STEPS[d]))
+                        set(EDGES[d], square);
+                }
+                for (int t = 0; t < BitBoard.SYMMETRIES; t++) {
+                    int tr = r;
+                    int tc = c;
+                    if ((t & 4) != 0) {
+                        tr = c;
+                        tc = r;
+                    }
+                    if ((t & 2) != 0)
+                        tr = N - 1 - tr;
+                    if ((t & 1) != 0)
+                        tc = N - 1 - tc;
+                    SYMMETRY[t][square] = tr * N + tc;
+                }
+            }
+        }
+    }
+
+    private static boolean onBoard(int r, int c) {
+        return r >= 0 && r < N && c >= 0 && c < N;
+    }
+
+    private static void set(long[] bits, int square) {
+        bits[square >>> 6] |= 1L << square;
+    }
+
+    /**
+     * Bit index of a square of the game matrix
+     */
+    public static int square(int row, int col) {
+        return (row - 1) * N + (col - 1);
+    }
+
+    /**
+     * Whether a square is set
+     */
+    public static boolean has(long[] bits, int square) {
+        return (bits[square >>> 6] & 1L << square) != 0;
+    }
+
+    /**
+     * Collect the squares of one color into a bitboard
+     *
+     * @param board game matrix including the off-board frame
+     * @param color color of the disks to collect
+     * @return bitboard of the disks of that color
+     */
+    public static long[] toBits(int[][] board, int color) {
+        long[] bits = new long[WORDS];
+        int square = 0;
+        for (int i = 1; i <= N; i++)
+            for (int j = 1; j <= N; j++, square++)
+                if (board[i][j] == color)
+                    bits[square >>> 6] |= 1L << square;
+        return bits;
+    }
+
+    /**
+     * Number of set squares
+     */
+    public static int count(long[] bits) {
+        int count = 0;
+        for (long word : bits)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    public static boolean isEmpty(long[] bits) {
+        for (long word : bits)
+            if (word != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Legal moves of a player
+     *
+     * @param own bitboard of the player to move
+     * @param opp bitboard of the other player
+     * @return bitboard of the squares the player can move to
+     */
+    public static long[] legalMoves(long[] own, long[] opp) {
+        if (WORDS == 1)
+            return new long[]{legalMoves(own[0], opp[0])};
+        long[] moves = new long[WORDS];
+        long[] empty = new long[WORDS];
+        for (int w = 0; w < WORDS; w++)
+            empty[w] = ~(own[w] | opp[w]) & BOARD[w];
+        long[] run = new long[WORDS];
+        long[] step = new long[WORDS];
+        for (int d = 0; d < SHIFTS.length; d++) {
+            // Runs of opponent disks starting next to an own disk, then the empty square past them
+            shift(own, d, run);
+            and(run, opp);
+            for (int i = 0; i < N - 3; i++) {
+                shift(run, d, step);
+                for (int w = 0; w < WORDS; w++)
+                    run[w] |= step[w] & opp[w];
+            }
+            shift(run, d, step);
+            for (int w = 0; w < WORDS; w++)
+                moves[w] |= step[w] & empty[w];
+        }
+        return moves;
+    }
+
+    private static long legalMoves(long own, long opp) {
+        long empty = ~(own | opp) & BOARD[0];
+        long moves = 0;
+        for (int d = 0; d < SHIFTS.length; d++) {
+            int s = SHIFTS[d];
+            long mask = TARGETS[d][0] & opp;
+            long run = (s > 0 ? own << s : own >>> -s) & mask;
+            for (int i = 0; i < N - 3; i++)
+                run |= (s > 0 ? run << s : run >>> -s) & mask;
+            moves |= (s > 0 ? run << s : run >>> -s) & TARGETS[d][0] & empty;
+        }
+        return moves;
+    }
+
+    /**
+     * Move every bit one step in a direction, dropping bits that leave the board or would
+     * wrap around to another row
+     */
+    private static void shift(long[] src, int direction, long[] dst) {
+        int s = SHIFTS[direction];
+        long[] mask = TARGETS[direction];
+        if (s > 0) {
+            for (int w = WORDS - 1; w >= 0; w--)
+                dst[w] = ((src[w] << s) | (w > 0 ? src[w - 1] >>> (64 - s) : 0)) & mask[w];
+        } else {
+            s = -s;
+            for (int w = 0; w < WORDS; w++)
+                dst[w] = ((src[w] >>> s) | (w + 1 < WORDS ? src[w + 1] << (64 - s) : 0)) & mask[w];
+        }
+    }
+
+    private static void and(long[] bits, long[] mask) {
+        for (int w = 0; w < WORDS; w++)
+            bits[w] &= mask[w];
+    }
+
+    /**
+     * Disks that can never be flipped again, see BitBoard.stable
+     *
+     * @param own bitboard of the disks to check
+     * @param opp bitboard of the other color
+     * @return bitboard of the stable disks of own
+     */
+    public static long[] stable(long[] own, long[] opp) {
+        if (N == 8)
+            return new long[]{BitBoard.stable(own[0], opp[0])};
+        long[] filled = new long[WORDS];
+        for (int w = 0; w < WORDS; w++)
+            filled[w] = own[w] | opp[w];
+        long[] fullRows = full(filled, ROWS);
+        long[] fullColumns = full(filled, COLUMNS);
+        long[] fullDiagonals = full(filled, DIAGONALS);
+        long[] fullAntiDiagonals = full(filled, ANTI_DIAGONALS);
+        long[][] lines = {fullRows, fullColumns, fullDiagonals, fullAntiDiagonals};
+
+        long[] stable = new long[WORDS];
+        long[] next = new long[WORDS];
+        long[][] safe = new long[SHIFTS.length][WORDS];
+        while (true) {
+            // Squares whose neighbor in a direction is off the board or a stable disk. The
+            // neighbor in direction d is brought here by the shift in the opposite direction d ^ 1.
+            for (int d = 0; d < SHIFTS.length; d++) {
+                shift(stable, d ^ 1, safe[d]);
+                for (int w = 0; w < WORDS; w++)
+                    safe[d][w] |= EDGES[d][w];
+            }
+            boolean changed = false;
+            for (int w = 0; w < WORDS; w++) {
+                long bits = own[w];
+                // Each pair of opposite directions runs along one of the 4 lines through a square
+                for (int line = 0; line < lines.length; line++)
+                    bits &= lines[line][w] | safe[2 * line][w] | safe[2 * line + 1][w];
+                next[w] = bits;
+                changed |= bits != stable[w];
+            }
+            if (!changed)
+                return stable;
+            System.arraycopy(next, 0, stable, 0, WORDS);
+        }
+    }
+
+    private static long[] full(long[] filled, long[][] lines) {
+        long[] full = new long[WORDS];
+        for (long[] line : lines) {
+            boolean isFull = true;
+            for (int w = 0; w < WORDS && isFull; w++)
+                isFull = (filled[w] & line[w]) == line[w];
+            if (isFull)
+                for (int w = 0; w < WORDS; w++)
+                    full[w] |= line[w];
+        }
+        return full;
+    }
+
+    /**
+     * Winner of a position that is decided by stable disks alone
+     *
+     * @param black bitboard of black disks
+     * @param white bitboard of white disks
+     * @return the color with more than half of the board stable, -1 if there is none
+     */
+    public static int decidedWinner(long[] black, long[] white) {
+        int half = SQUARES / 2;
+        if (count(black) > half && count(stable(black, white)) > half)
+            return Game.BLACK;
+        if (count(white) > half && count(stable(white, black)) > half)
+            return Game.WHITE;
+        return -1;
+    }
+
+    /**
+     * Canonical form of a position under the 8 board symmetries, see BitBoard.canonicalize
+     *
+     * @param black bitboard of black disks
+     * @param white bitboard of white disks
+     * @return the canonical black words followed by the canonical white words
+     */
+    public static long[] canonicalize(long[] black, long[] white) {
+        if (N == 8) {
+            long[] out = new long[2];
+            BitBoard.canonicalize(black[0], white[0], out);
+            return out;
+        }
+        long[] best = new long[2 * WORDS];
+        System.arraycopy(black, 0, best, 0, WORDS);
+        System.arraycopy(white, 0, best, WORDS, WORDS);
+        long[] candidate = new long[2 * WORDS];
+        for (int t = 1; t < BitBoard.SYMMETRIES; t++) {
+            Arrays.fill(candidate, 0);
+            for (int square = 0; square < SQUARES; square++) {
+                int to = SYMMETRY[t][square];
+                if (has(black, square))
+                    candidate[to >>> 6] |= 1L << to;
+                else if (has(white, square))
+                    candidate[WORDS + (to >>> 6)] |= 1L << to;
+            }
+            if (compare(candidate, best) < 0) {
+                long[] swap = best;
+                best = candidate;
+                candidate = swap;
+            }
+        }
+        return best;
+    }
+
+    private static int compare(long[] a, long[] b) {
+        for (int w = 0; w < a.length; w++)
+            if (a[w] != b[w])
+                return Long.compare(a[w], b[w]);
+        return 0;
+    }
+
+    /**
+     * 64-bit hash of a position
+     *
+     * @param black bitboard of black disks
+     * @param white bitboard of white disks
+     * @return hash key
+     */
+    public static long hash(long[] black, long[] white) {
+        long h = 0;
+        for (int w = 0; w < WORDS; w++)
+            h = h * 31 + BitBoard.hash(black[w], white[w]);
+        return h;
+    }
+
+    /**
+     * 64-bit hash of a canonical position returned by {@link #canonicalize}
+     */
+    public static long hash(long[] canonical) {
+        long h = 0;
+        for (int w = 0; w < WORDS; w++)
+            h = h * 31 + BitBoard.hash(canonical[w], canonical[WORDS + w]);
+        return h;
+    }
+}
@@ -0,0 +1,273 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a round-robin tournament on worker JVMs of this machine, each with its own heap and
+ * garbage collector. The workers are headless engines (see Engine) that play whole games
+ * sent to them with the playgame command over their stdin and stdout. A worker that exits
+ * or hangs is restarted and its game goes back into the queue. Every pair of engines plays
+ * the same number of games, in pairs with the same opening and the colors swapped, seeded
+ * as in Match, and the score of every pairing is printed at the end.
+ * <p>
+ * Run as java Cluster GAMES ENGINE ENGINE [ENGINE...]<br>
+ * Engines are written as in Match. Options are set with JVM options:<br>
+ * -Dothello.workers=N            (worker JVMs, all cores by default)<br>
+ * -Dothello.workerOptions=OPTS   (JVM options of the workers, such as "-Xmx512m -XX:+UseParallelGC")<br>
+ * -Dothello.gameTimeout=MILLIS   (restart a worker whose game takes longer, 600000 by default)<br>
+ * The other -Dothello options and the seed of the run are passed on to the workers.
+ */
+public class Cluster {
+    private static final int WORKERS = Integer.getInteger("othello.workers", Runtime.getRuntime().availableProcessors());
+    private static final String WORKER_OPTIONS = System.getProperty("othello.workerOptions", "");
+    private static final long GAME_TIMEOUT = Long.getLong("othello.gameTimeout", 600000);
+
+    // A game that fails this many times is given up
+    private static final int MAX_ATTEMPTS = 3;
+
+    // Print the progress every this many games
+    private static final int REPORT_INTERVAL = 20;
+
+    /**
+     * One game of the tournament
+     */
+    private static class Job {
+        final int pairing;
+        final int number;       // Game number of Match, picks the seed and the opening
+        final String black;
+        final String white;
+        int attempts;
+
+        Job(int pairing, int number, String black, String white) {
+            this.pairing = pairing;
+            this.number = number;
+            this.black = black;
+            this.white = white;
+        }
+    }
+
+    private final String[] engines;
+    private final ArrayList<int[]> pairings = new ArrayList<>();
+    private final LinkedBlockingDeque<Job> queue = new LinkedBlockingDeque<>();
+
+    // Wins, draws, losses and disc difference of the first engine of each pairing
+    private final int[][] scores;
+    private int remaining;
+    private int finished;
+    private int failed;
+    private int restarts;
+
+    // Kills workers whose game takes too long
+    private final Timer watchdog = new Timer("cluster-watchdog", true);
+
+    /**
+     * Set up a round robin
+     *
+     * @param games   games per pairing, rounded up to an even number so that colors alternate
+     * @param engines the engines, at least two
+     */
+    public Cluster(int games, String[] engines) {
+        this.engines = engines;
+        for (String engine : engines) {
+            // Fail here and not in every worker
+            Match.type(engine);
+            Match.config(engine);
+        }
+        games += games % 2;
+        for (int a = 0; a < engines.length; a++)
+            for (int b = a + 1; b < engines.length; b++)
+                pairings.add(new int[]{a, b});
+        scores = new int[pairings.size()][4];
+        for (int p = 0; p < pairings.size(); p++) {
+            String first = engines[pairings.get(p)[0]];
+            String second = engines[pairings.get(p)[1]];
+            for (int g = 0; g < games; g++) {
+                // Even games give the first engine black, odd games replay the opening swapped
+                int number = p * games + g;
+                queue.add(g % 2 == 0 ? new Job(p, number, first, second) : new Job(p, number, second, first));
+            }
+        }
+        remaining = queue.size();
+    }
+
+    /**
+     * Play all games on the workers and print the results
+     */
+    public void run() throws InterruptedException {
+        System.out.println("seed " + Seeds.BASE + "  workers " + WORKERS + "  games " + remaining);
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < WORKERS; w++) {
+            int id = w;
+            Thread thread = new Thread(() -> work(id), "cluster-" + w);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads)
+            thread.join();
+        watchdog.cancel();
+        System.out.println();
+        for (int p = 0; p < pairings.size(); p++)
+            System.out.println(summary(p));
+        System.out.println("failed games " + failed + "  worker restarts " + restarts);
+    }
+
+    /**
+     * Feed games to one worker JVM until the queue is empty, restarting the worker when it fails
+     */
+    private void work(int id) {
+        Process process = null;
+        BufferedReader in = null;
+        PrintStream out = null;
+        while (remaining() > 0) {
+            Job job;
+            try {
+                job = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (job == null)
+                continue;
+            try {
+                if (process == null) {
+                    process = start();
+                    in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                    out = new PrintStream(process.getOutputStream(), true);
+                }
+                Process running = process;
+                TimerTask kill = new TimerTask() {
+                    public void run() {
+                        running.destroyForcibly();
+                    }
+                };
+                watchdog.schedule(kill, GAME_TIMEOUT);
+                out.println("playgame " + job.black + " " + job.white + " " + job.number);
+                String line;
+                String result = null;
+                while (result == null && (line = in.readLine()) != null) {
+                    if (line.startsWith("result "))
+                        result = line;
+                    else if (line.startsWith("error"))
+                        throw new IOException(line);
+                }
+                // The watchdog has run when it can no longer be cancelled
+                boolean timedOut = !kill.cancel();
+                if (result == null)
+                    throw new IOException(timedOut ? "timed out" : "worker exited");
+                record(job, result);
+            } catch (IOException | RuntimeException e) {
+                // Whatever went wrong, the game goes back to the queue, or remaining never reaches 0
+                System.out.println("worker " + id + " failed on game " + job.number + ": " + e.getMessage());
+                if (process != null)
+                    process.destroyForcibly();
+                process = null;
+                retry(job);
+            }
+        }
+        if (process != null) {
+            out.println("quit");
+            try {
+                if (!process.waitFor(10, TimeUnit.SECONDS))
+                    process.destroyForcibly();
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * Start a worker JVM with the same class path, the -Dothello options and the seed of this run
+     */
+    private static Process start() throws IOException {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (!WORKER_OPTIONS.isBlank())
+            command.addAll(Arrays.asList(WORKER_OPTIONS.trim().split("\\s+")));
+        for (String name : System.getProperties().stringPropertyNames())
+            if (name.startsWith("othello.") && !name.equals("othello.seed"))
+                command.add("-D" + name + "=" + System.getProperty(name));
+        command.add("-Dothello.seed=" + Seeds.BASE);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("Engine");
+        // A worker whose coordinator dies reads the end of its input and exits
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    private synchronized int remaining() {
+        return remaining;
+    }
+
+    /**
+     * Put a failed game back at the front of the queue, or give it up after MAX_ATTEMPTS
+     */
+    private synchronized void retry(Job job) {
+        restarts++;
+        if (++job.attempts < MAX_ATTEMPTS) {
+            queue.addFirst(job);
+        } else {
+            failed++;
+            remaining--;
+        }
+    }
+
+    /**
+     * Count a finished game for its pairing
+     *
+     * @param job  the game
+     * @param line the answer of the worker, "result N WINNER DISCS"
+     */
+    private synchronized void record(Job job, String line) throws IOException {
+        String[] fields = line.split("\\s+");
+        if (fields.length != 4 || !fields[1].equals(Integer.toString(job.number))
+            || !(fields[2].equals("black") || fields[2].equals("white") || fields[2].equals("tie")))
+            throw new IOException("unexpected answer " + line);
+        int discs;
+        try {
+            discs = Integer.parseInt(fields[3]);
+        } catch (NumberFormatException e) {
+            throw new IOException("unexpected answer " + line);
+        }
+        if (Math.abs(discs) > BoardBits.SQUARES)
+            throw new IOException("unexpected answer " + line);
+        int[] score = scores[job.pairing];
+        // The first engine of the pairing plays black in even games
+        boolean firstIsBlack = job.number % 2 == 0;
+        if (fields[2].equals("tie"))
+            score[1]++;
+        else if (fields[2].equals("black") == firstIsBlack)
+            score[0]++;
+        else
+            score[2]++;
+        score[3] += firstIsBlack ? discs : -discs;
+        remaining--;
+        if (++finished % REPORT_INTERVAL == 0)
+            System.out.println("games " + finished + "  remaining " + remaining);
+    }
+
+    private synchronized String summary(int p) {
+        int[] score = scores[p];
+        int games = score[0] + score[1] + score[2];
+        double share = games == 0 ? 0.5 : (score[0] + 0.5 * score[1]) / games;
+        share = Math.min(Math.max(share, 1e-3), 1 - 1e-3);
+        return String.format("%s vs %s  W/D/L %d/%d/%d  elo %+.1f  discs %+.2f", engines[pairings.get(p)[0]],
+            engines[pairings.get(p)[1]], score[0], score[1], score[2], -400 * Math.log10(1 / share - 1),
+            games == 0 ? 0 : score[3] * 1.0 / games);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 3) {
+            System.out.println("Usage: java Cluster GAMES ENGINE ENGINE [ENGINE...]");
+            System.out.println("An engine is an AIType with optional constants, such as MonteCarlo:expParam=1.0,simTime=200");
+            return;
+        }
+        new Cluster(Integer.parseInt(args[0]), Arrays.copyOfRange(args, 1, args.length)).run();
+    }
+}
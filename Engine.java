@@ -0,0 +1,372 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Headless engine driven by a line protocol over stdin and stdout, for tournament managers
+ * and scripts that only need moves. It never loads AWT or Swing classes.
+ * <p>
+ * Squares are written as a column letter and a row number, a1 is the top left corner.
+ * A position is one character per square (64 on the 8 x 8 board) in row order, '*' or 'X'
+ * for black, 'O' for white and '-' or '.' for empty, followed by the side to move. Commands:<br>
+ * engine TYPE          (one of the AIType names, MonteCarlo by default)<br>
+ * position start       (the initial position, black to move)<br>
+ * position BOARD SIDE  (set a position)<br>
+ * play MOVE            (play a move or "pass" for the side to move)<br>
+ * time MILLIS          (thinking time per move of the Monte Carlo engines, Minimax searches to
+ *                      its depth)<br>
+ * seed N               (restart the random choices of the engines from a seed)<br>
+ * go                   (search in the background, answers "bestmove MOVE")<br>
+ * stop                 (end the running search early)<br>
+ * analyze              (print the candidate moves of the last Monte Carlo search)<br>
+ * multipv K [MILLIS]   (stream the best K moves while searching, every MILLIS for Monte Carlo and
+ *                      after every depth for Minimax, as "info multipv ..." lines; 0 turns it off)<br>
+ * board                (print the position)<br>
+ * isready              (answers "readyok" once the running search is done)<br>
+ * playgame A B N       (play game N of Match between engines A and B, A black, answers
+ *                      "result N WINNER DISCS" with black, white or tie and the disc difference)<br>
+ * quit<br>
+ * Malformed commands are answered with a line starting with "error".
+ */
+public class Engine {
+    private final Strategy strategy = new Strategy();
+    private final MonteCarlo monteCarlo = new MonteCarlo();
+    private final PrintStream out;
+    private Game game = new Game();
+    private int turn = Game.BLACK;
+    private AIType aiType = AIType.MonteCarlo;
+    private Thread search;
+    private ArrayList<String> analysis = new ArrayList<>();
+
+    // Moves streamed during a search and milliseconds between Monte Carlo snapshots, 0 moves for none
+    private int multiPv;
+    private int snapshotMillis = 1000;
+
+    // Players of the engines of playgame by name, black and white, so that every game does not
+    // build new search tables
+    private final HashMap<String, Player[]> gamePlayers = new HashMap<>();
+
+    public Engine(PrintStream out) {
+        this.out = out;
+        game.init();
+    }
+
+    /**
+     * Run the command loop until "quit" or the end of input
+     *
+     * @param in command input
+     * @throws IOException if the input cannot be read
+     */
+    public void run(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] args = line.trim().split("\\s+");
+            if (args[0].isEmpty())
+                continue;
+            if (args[0].equals("quit"))
+                break;
+            try {
+                command(args);
+            } catch (IllegalArgumentException e) {
+                reply("error " + e.getMessage());
+            }
+        }
+        stopSearch();
+        waitForSearch();
+    }
+
+    private void command(String[] args) {
+        switch (args[0]) {
+            case "engine":
+                waitForSearch();
+                aiType = AIType.valueOf(arg(args, 1));
+                break;
+            case "position":
+                waitForSearch();
+                if (arg(args, 1).equals("start")) {
+                    game.init();
+                    turn = Game.BLACK;
+                } else {
+                    setPosition(args[1], arg(args, 2));
+                }
+                analysis.clear();
+                break;
+            case "play":
+                waitForSearch();
+                play(arg(args, 1));
+                analysis.clear();
+                break;
+            case "time":
+                waitForSearch();
+                monteCarlo.config.set("simTime", arg(args, 1));
+                break;
+            case "seed":
+                waitForSearch();
+                try {
+                    long seed = Long.parseLong(arg(args, 1));
+                    monteCarlo.setSeed(seed);
+                    strategy.setSeed(seed);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("bad seed " + args[1]);
+                }
+                break;
+            case "go":
+                waitForSearch();
+                go();
+                break;
+            case "stop":
+                stopSearch();
+                break;
+            case "multipv":
+                waitForSearch();
+                try {
+                    multiPv = Integer.parseInt(arg(args, 1));
+                    if (args.length > 2)
+                        snapshotMillis = Integer.parseInt(args[2]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("bad multipv " + String.join(" ", args));
+                }
+                break;
+            case "analyze":
+                waitForSearch();
+                for (String info : analysis)
+                    reply(info);
+                break;
+            case "board":
+                waitForSearch();
+                reply(boardString() + " " + (turn == Game.BLACK ? '*' : 'O'));
+                break;
+            case "playgame":
+                waitForSearch();
+                playGame(arg(args, 1), arg(args, 2), arg(args, 3));
+                break;
+            case "isready":
+                waitForSearch();
+                reply("readyok");
+                break;
+            default:
+                throw new IllegalArgumentException("unknown command " + args[0]);
+        }
+    }
+
+    /**
+     * Start a search of the current position on a background thread
+     */
+    private void go() {
+        Game position = new Game(game);
+        int color = turn;
+        monteCarlo.stop = false;
+        // The last snapshot is kept for analyze
+        ArrayList<String> streamed = new ArrayList<>();
+        AnalysisListener listener = multiPv <= 0 ? null : snapshot -> {
+            streamed.clear();
+            for (String line : snapshot.format()) {
+                streamed.add("info " + line);
+                reply("info " + line);
+            }
+        };
+        monteCarlo.listener = listener;
+        monteCarlo.multiPv = multiPv;
+        monteCarlo.snapshotMillis = snapshotMillis;
+        // Only Minimax needs the alpha-beta engine and its transposition table
+        if (aiType == AIType.Minimax) {
+            strategy.alphaBeta().stop = false;
+            strategy.alphaBeta().listener = listener;
+            strategy.alphaBeta().multiPv = multiPv;
+        }
+        search = new Thread(() -> {
+            String move;
+            ArrayList<String> info = new ArrayList<>();
+            if (!position.hasLegalMoves(color)) {
+                move = "pass";
+            } else if (aiType == AIType.MonteCarlo || aiType == AIType.NaiveMonteCarlo) {
+                MCNode root = monteCarlo.search(position, color, aiType == AIType.NaiveMonteCarlo);
+                ArrayList<MCNode> children = new ArrayList<>(root.children);
+                children.sort(Comparator.comparingDouble((MCNode c) -> -c.wins[color] * 1.0 / c.totalSim));
+                if (listener == null) {
+                    for (MCNode c : children) {
+                        info.add("info move " + squareName(c.game.recentMove[0], c.game.recentMove[1])
+                            + " visits " + c.totalSim + " winrate " + String.format("%.4f", c.wins[color] * 1.0 / c.totalSim));
+                    }
+                }
+                int[] best = root.getMostWinningChild().game.recentMove;
+                move = squareName(best[0], best[1]);
+            } else {
+                Player player = new Player(strategy, aiType, color);
+                int[][] before = Util.deepCopy(position.board);
+                int[] best = Game.findMove(before, player.strategy(position, color).board);
+                move = best == null ? "pass" : squareName(best[0], best[1]);
+            }
+            analysis = listener != null ? streamed : info;
+            for (String line : info)
+                reply(line);
+            reply("bestmove " + move);
+        }, "engine-search");
+        search.start();
+    }
+
+    /**
+     * Play a whole game between two engines with the seed and the opening Match gives the game,
+     * for the workers of Cluster
+     *
+     * @param black  engine of black, an AIType with optional constants as in Match
+     * @param white  engine of white
+     * @param number number of the game, which picks its seed and its opening
+     */
+    private void playGame(String black, String white, String number) {
+        int g;
+        try {
+            g = Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad game number " + number);
+        }
+        Player[] players = {players(black)[Game.BLACK], players(white)[Game.WHITE]};
+        long seed = Seeds.derive(Seeds.BASE, g);
+        players[Game.BLACK].setSeed(Seeds.derive(seed, Game.BLACK));
+        players[Game.WHITE].setSeed(Seeds.derive(seed, Game.WHITE));
+        Game end = Match.play(players, g / 2);
+        int[] diskCount = end.getDiskCount();
+        int winner = end.getWinner();
+        reply("result " + g + " " + (winner == Game.BLACK ? "black" : winner == Game.WHITE ? "white" : "tie")
+            + " " + (diskCount[Game.BLACK] - diskCount[Game.WHITE]));
+    }
+
+    private Player[] players(String engine) {
+        Player[] players = gamePlayers.get(engine);
+        if (players == null) {
+            AIType type = Match.type(engine);
+            EngineConfig config = Match.config(engine);
+            players = new Player[]{new Player(type, Game.BLACK, config), new Player(type, Game.WHITE, config)};
+            gamePlayers.put(engine, players);
+        }
+        return players;
+    }
+
+    private void stopSearch() {
+        monteCarlo.stop = true;
+        // Only Minimax searches have an alpha-beta engine to stop
+        if (aiType == AIType.Minimax)
+            strategy.alphaBeta().stop = true;
+    }
+
+    private void waitForSearch() {
+        if (search == null)
+            return;
+        try {
+            search.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        search = null;
+    }
+
+    private void play(String move) {
+        if (move.equals("pass")) {
+            if (game.hasLegalMoves(turn))
+                throw new IllegalArgumentException("pass is not legal, there are moves");
+        } else {
+            int[] square = parseSquare(move);
+            if (!game.legalMove(square[0], square[1], turn, false))
+                throw new IllegalArgumentException("illegal move " + move);
+            game.placeDisk(square[0], square[1], turn);
+        }
+        turn = Game.toggleTurn(turn);
+    }
+
+    private void setPosition(String board, String side) {
+        Game position = new Game();
+        turn = parsePosition(position, board, side);
+        game = position;
+    }
+
+    /**
+     * Set up a game from the one-line position notation
+     *
+     * @param game  game to set up
+     * @param board all squares in row order
+     * @param side  the player to move
+     * @return the player to move
+     * @throws IllegalArgumentException if the position is malformed
+     */
+    static int parsePosition(Game game, String board, String side) {
+        if (board.length() != Game.BOARD_SIZE * Game.BOARD_SIZE)
+            throw new IllegalArgumentException("board must have " + Game.BOARD_SIZE * Game.BOARD_SIZE + " squares");
+        int color = parseColor(side.charAt(0));
+        if (color == Game.EMPTY)
+            throw new IllegalArgumentException("side to move must be black or white");
+        game.init();
+        for (int k = 0; k < board.length(); k++)
+            game.board[k / Game.BOARD_SIZE + 1][k % Game.BOARD_SIZE + 1] = parseColor(board.charAt(k));
+        return color;
+    }
+
+    private String boardString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= Game.BOARD_SIZE; i++) {
+            for (int j = 1; j <= Game.BOARD_SIZE; j++) {
+                int c = game.board[i][j];
+                sb.append(c == Game.BLACK ? '*' : c == Game.WHITE ? 'O' : '-');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int parseColor(char c) {
+        switch (c) {
+            case '*': case 'X': case 'x': case 'B': case 'b':
+                return Game.BLACK;
+            case 'O': case 'o': case 'W': case 'w':
+                return Game.WHITE;
+            case '-': case '.':
+                return Game.EMPTY;
+            default:
+                throw new IllegalArgumentException("unknown square " + c);
+        }
+    }
+
+    /**
+     * Row and column of the game matrix of a square name such as "d3"
+     */
+    static int[] parseSquare(String name) {
+        if (name.length() < 2)
+            throw new IllegalArgumentException("bad square " + name);
+        int col = Character.toLowerCase(name.charAt(0)) - 'a' + 1;
+        int row;
+        try {
+            row = Integer.parseInt(name.substring(1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad square " + name);
+        }
+        if (col < 1 || col > Game.BOARD_SIZE || row < 1 || row > Game.BOARD_SIZE)
+            throw new IllegalArgumentException("bad square " + name);
+        return new int[]{row, col};
+    }
+
+    /**
+     * Name of a square of the game matrix, such as "d3"
+     */
+    static String squareName(int row, int col) {
+        return (char) ('a' + col - 1) + Integer.toString(row);
+    }
+
+    private static String arg(String[] args, int i) {
+        if (i >= args.length)
+            throw new IllegalArgumentException(args[0] + " needs more arguments");
+        return args[i];
+    }
+
+    private synchronized void reply(String line) {
+        out.println(line);
+        out.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Only protocol lines go to stdout
+        Warmup.run(System.err);
+        new Engine(System.out).run(new BufferedReader(new InputStreamReader(System.in)));
+    }
+}
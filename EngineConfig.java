@@ -0,0 +1,198 @@
+/**
+ * Tuning constants of the search engines, one instance per Player so that two
+ * configurations can play each other. The defaults are the values the engines were tuned with.
+ * <p>
+ * A configuration can be written as a list of name=value pairs separated by commas,
+ * for example "expParam=1.0,simTime=500". The names are the field names, and simTime
+ * sets the thinking time of both colors.
+ */
+public class EngineConfig {
+    /**
+     * Exploration parameter for UCT calculation
+     */
+    public double expParam = Math.sqrt(2);
+
+    /**
+     * Thinking time per move of the Monte Carlo search in milliseconds, for each color
+     */
+    public int simTimeBlack = 2000;
+    public int simTimeWhite = 1000;
+
+    /**
+     * How many games the Monte Carlo search simulates at most per move
+     */
+    public int simGames = 200000;
+
+    /**
+     * Moves played in a simulation before the position is scored by the evaluator instead of
+     * playing on to the end, -1 to always play to the end and 0 to score the new node right away.
+     * Defaults to -Dothello.rolloutPlies=N.
+     */
+    public int rolloutPlies = Integer.getInteger("othello.rolloutPlies", -1);
+
+    /**
+     * Tree nodes whose winner is decided by stable disks are scored without a simulation. With
+     * N > 0 simulations also check every N moves once a color could own more than half the board,
+     * -1 turns all checks off. Random games are rarely decided more than a move or two before the
+     * end, so by default simulations are not checked. Defaults to -Dothello.stableCheckPlies=N.
+     */
+    public int stableCheckPlies = Integer.getInteger("othello.stableCheckPlies", 0);
+
+    /**
+     * Most nodes the Monte Carlo tree holds, the least simulated subtrees are pruned when it is
+     * full. 0 for no limit. Defaults to -Dothello.maxNodes=N.
+     */
+    public int maxNodes = Integer.getInteger("othello.maxNodes", 0);
+
+    /**
+     * RAVE: with K > 0 the tree also counts every move of a simulation as if it had been played
+     * first (all moves as first), and a child's win rate is blended with that of its move with
+     * weight sqrt(K / (3 * simulations + K)). 0 turns RAVE off. In matches at 1000 simulations per
+     * move it did not beat plain UCT for any K tried, so it is off by default.
+     * Defaults to -Dothello.raveEquivalence=K.
+     */
+    public int raveEquivalence = Integer.getInteger("othello.raveEquivalence", 0);
+
+    /**
+     * Weight of the prior of a move in the Monte Carlo selection, see MonteCarlo.prior. The prior
+     * adds weight * prior / (simulations + 1) to a child, and unvisited children are valued at
+     * the win rate of their parent plus the prior instead of being tried first. 0 turns priors off.
+     * Weight 1 won 60% of 200 games against no priors at 1000 simulations per move.
+     * Defaults to -Dothello.priorWeight=W, or 1.
+     */
+    public double priorWeight = Double.parseDouble(System.getProperty("othello.priorWeight", "1"));
+
+    /**
+     * Weight values used by the minimax search to determine priorities when examining potential moves
+     */
+    public double positionWeight = 5;
+    public double mobilityWeight = 15;
+    public double endWeight = 300;
+
+    /**
+     * Depth of the minimax search. Odd depths stop the search right after the player's
+     * own move and perform worse.
+     */
+    public int maxDepth = 2;
+
+    /**
+     * Whether the Monte Carlo engine prints the win rate of every move it makes, as the GUI
+     * does. Not a tuning constant, so it cannot be set by name.
+     */
+    public boolean verbose = true;
+
+    public EngineConfig() {
+    }
+
+    public EngineConfig(EngineConfig another) {
+        expParam = another.expParam;
+        simTimeBlack = another.simTimeBlack;
+        simTimeWhite = another.simTimeWhite;
+        simGames = another.simGames;
+        rolloutPlies = another.rolloutPlies;
+        stableCheckPlies = another.stableCheckPlies;
+        maxNodes = another.maxNodes;
+        raveEquivalence = another.raveEquivalence;
+        priorWeight = another.priorWeight;
+        positionWeight = another.positionWeight;
+        mobilityWeight = another.mobilityWeight;
+        endWeight = another.endWeight;
+        maxDepth = another.maxDepth;
+        verbose = another.verbose;
+    }
+
+    /**
+     * Thinking time of the Monte Carlo search for a color
+     *
+     * @param color the player to move
+     * @return milliseconds per move
+     */
+    public int simTime(int color) {
+        return color == Game.WHITE ? simTimeWhite : simTimeBlack;
+    }
+
+    /**
+     * Set one constant by name
+     *
+     * @param name  field name, or simTime for both thinking times
+     * @param value new value
+     * @throws IllegalArgumentException if the name is unknown or the value is not a number
+     */
+    public void set(String name, String value) {
+        try {
+            switch (name) {
+                case "expParam":
+                    expParam = Double.parseDouble(value);
+                    break;
+                case "simTime":
+                    simTimeBlack = simTimeWhite = Integer.parseInt(value);
+                    break;
+                case "simTimeBlack":
+                    simTimeBlack = Integer.parseInt(value);
+                    break;
+                case "simTimeWhite":
+                    simTimeWhite = Integer.parseInt(value);
+                    break;
+                case "simGames":
+                    simGames = Integer.parseInt(value);
+                    break;
+                case "rolloutPlies":
+                    rolloutPlies = Integer.parseInt(value);
+                    break;
+                case "stableCheckPlies":
+                    stableCheckPlies = Integer.parseInt(value);
+                    break;
+                case "maxNodes":
+                    maxNodes = Integer.parseInt(value);
+                    break;
+                case "raveEquivalence":
+                    raveEquivalence = Integer.parseInt(value);
+                    break;
+                case "priorWeight":
+                    priorWeight = Double.parseDouble(value);
+                    break;
+                case "positionWeight":
+                    positionWeight = Double.parseDouble(value);
+                    break;
+                case "mobilityWeight":
+                    mobilityWeight = Double.parseDouble(value);
+                    break;
+                case "endWeight":
+                    endWeight = Double.parseDouble(value);
+                    break;
+                case "maxDepth":
+                    maxDepth = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown constant " + name);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad value " + value + " for " + name);
+        }
+    }
+
+    /**
+     * Set the constants of a list of name=value pairs separated by commas
+     *
+     * @param spec the pairs, may be empty
+     * @throws IllegalArgumentException if a pair is malformed
+     */
+    public void setAll(String spec) {
+        for (String pair : spec.split(",")) {
+            if (pair.isEmpty())
+                continue;
+            int eq = pair.indexOf('=');
+            if (eq < 0)
+                throw new IllegalArgumentException("expected name=value, got " + pair);
+            set(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+        }
+    }
+
+    public String toString() {
+        return "expParam=" + expParam + ",simTimeBlack=" + simTimeBlack + ",simTimeWhite=" + simTimeWhite
+            + ",simGames=" + simGames + ",rolloutPlies=" + rolloutPlies + ",stableCheckPlies=" + stableCheckPlies
+            + ",maxNodes=" + maxNodes + ",raveEquivalence=" + raveEquivalence + ",priorWeight=" + priorWeight
+            + ",positionWeight=" + positionWeight + ",mobilityWeight=" + mobilityWeight
+            + ",endWeight=" + endWeight + ",maxDepth=" + maxDepth;
+    }
+}
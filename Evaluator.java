@@ -0,0 +1,15 @@
+/**
+ * Static evaluation of a position as a win probability, used to score Monte Carlo
+ * simulations that stop before the end of the game
+ */
+public interface Evaluator {
+    /**
+     * Estimate the chance of a player to win from a position
+     *
+     * @param game  the state of the game, not finished
+     * @param turn  the player to move
+     * @param color the player whose chance is estimated
+     * @return win probability of color in [0, 1]
+     */
+    double winProbability(Game game, int turn, int color);
+}
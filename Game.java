@@ -23,13 +23,22 @@ public class Game {
     public static final int BLACK = 0;
     public static final int WHITE = 1;
     public static final int EMPTY = 2;
-    final static int WIDTH = 10;
-    final static int HEIGHT = 10;
-    final static int BOARD_SIZE = 8;
+    public static final int PLAYER_SIZE = 2;
+    // Side of the board, one of 6, 8, 10 and 12, set with -Dothello.boardSize=N
+    final static int BOARD_SIZE = boardSize();
+    final static int WIDTH = BOARD_SIZE + 2;
+    final static int HEIGHT = BOARD_SIZE + 2;
     public int board[][] = new int[WIDTH][HEIGHT];
     public Stack<int[][]> boardHistory = new Stack<>();
     public int[] recentMove;
 
+    private static int boardSize() {
+        int size = Integer.getInteger("othello.boardSize", 8);
+        if (size != 6 && size != 8 && size != 10 && size != 12)
+            throw new IllegalArgumentException("othello.boardSize must be 6, 8, 10 or 12");
+        return size;
+    }
+
     /**
      * Default constructor
      */
@@ -160,15 +169,29 @@ public class Game {
      */
     public ArrayList<int[]> getLegalMoves(int player) {
         ArrayList<int[]> legalMoves = new ArrayList<>();
-        for (int i = 1; i <= BOARD_SIZE; i++)
-            for (int j = 1; j <= BOARD_SIZE; j++)
-                if (legalMove(i, j, player, false))
-                    legalMoves.add(new int[]{i, j});
+        long[] moves = moveBits(player);
+        for (int w = 0; w < moves.length; w++) {
+            for (long bits = moves[w]; bits != 0; bits &= bits - 1) {
+                int square = w * 64 + Long.numberOfTrailingZeros(bits);
+                legalMoves.add(new int[]{square / BOARD_SIZE + 1, square % BOARD_SIZE + 1});
+            }
+        }
         return legalMoves;
     }
 
     public boolean hasLegalMoves(int player) {
-        return !getLegalMoves(player).isEmpty();
+        return !BoardBits.isEmpty(moveBits(player));
+    }
+
+    /**
+     * Legal moves of a player as a bitboard of BoardBits, generated with shifts of the
+     * whole board instead of scanning every square
+     *
+     * @param player the player to move
+     * @return bitboard of the squares the player can move to
+     */
+    public long[] moveBits(int player) {
+        return BoardBits.legalMoves(BoardBits.toBits(board, player), BoardBits.toBits(board, toggleTurn(player)));
     }
 
     /**
@@ -293,6 +316,21 @@ public class Game {
     }
 
 
+    /**
+     * Find the disk placed between two states of the board
+     *
+     * @param before board before the move
+     * @param after  board after the move
+     * @return row and column of the new disk, null if no disk was placed
+     */
+    public static int[] findMove(int[][] before, int[][] after) {
+        for (int i = 1; i <= BOARD_SIZE; i++)
+            for (int j = 1; j <= BOARD_SIZE; j++)
+                if (before[i][j] == EMPTY && after[i][j] != EMPTY)
+                    return new int[]{i, j};
+        return null;
+    }
+
     public static int toggleTurn(int color) {
         return color == BLACK ? WHITE : BLACK;
     }
@@ -302,7 +340,7 @@ public class Game {
      * @return int array of disk counts
      */
     public int[] getDiskCount() {
-        int[] diskCount = new int[Othello.PLAYER_SIZE];
+        int[] diskCount = new int[Game.PLAYER_SIZE];
         for (int i = 1; i <= BOARD_SIZE; i++)
             for (int j = 1; j <= BOARD_SIZE; j++)
                 if (board[i][j] == BLACK || board[i][j] == WHITE)
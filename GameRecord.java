@@ -0,0 +1,150 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact record of one played game: the engines of both colors, the random seed of the
+ * game, the result and one byte per move. Passes are not stored, a player without a legal
+ * move always passes, so replaying the moves restores them.
+ * <p>
+ * Encoded layout, all numbers big-endian:<br>
+ * byte  black engine (AIType ordinal)<br>
+ * byte  white engine (AIType ordinal)<br>
+ * long  seed<br>
+ * byte  winner (Game.BLACK, Game.WHITE or Game.EMPTY for a tie)<br>
+ * byte  final black disks minus white disks<br>
+ * byte  number of moves, unsigned<br>
+ * bytes moves as BitBoard square indexes
+ */
+public class GameRecord {
+    /**
+     * Size of the fixed part of an encoded record
+     */
+    public static final int HEADER_SIZE = 13;
+
+    public AIType blackEngine;
+    public AIType whiteEngine;
+    public long seed;
+    public int winner = Game.EMPTY;
+    public int discDifference;
+
+    private byte[] moves = new byte[BoardBits.SQUARES];
+    private int moveCount;
+
+    public GameRecord(AIType blackEngine, AIType whiteEngine, long seed) {
+        this.blackEngine = blackEngine;
+        this.whiteEngine = whiteEngine;
+        this.seed = seed;
+    }
+
+    /**
+     * Append a move to the record
+     *
+     * @param row row in the game matrix
+     * @param col column in the game matrix
+     */
+    public void addMove(int row, int col) {
+        if (moveCount == moves.length)
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        moves[moveCount++] = (byte) BoardBits.square(row, col);
+    }
+
+    /**
+     * Record the result of the finished game
+     *
+     * @param game the final state of the game
+     */
+    public void finish(Game game) {
+        int[] diskCount = game.getDiskCount();
+        winner = game.getWinner();
+        // The difference is stored in one byte, which is short of the 144 squares of a 12 x 12 board
+        discDifference = Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, diskCount[Game.BLACK] - diskCount[Game.WHITE]));
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @param i index of the move
+     * @return row and column in the game matrix of the move
+     */
+    public int[] getMove(int i) {
+        int square = moves[i] & 0xff;
+        return new int[]{square / Game.BOARD_SIZE + 1, square % Game.BOARD_SIZE + 1};
+    }
+
+    /**
+     * Size of the record once encoded
+     */
+    public int encodedSize() {
+        return HEADER_SIZE + moveCount;
+    }
+
+    /**
+     * Write the record at the position of a buffer
+     *
+     * @param buffer buffer with at least encodedSize() bytes remaining
+     */
+    public void encode(ByteBuffer buffer) {
+        buffer.put((byte) blackEngine.ordinal());
+        buffer.put((byte) whiteEngine.ordinal());
+        buffer.putLong(seed);
+        buffer.put((byte) winner);
+        buffer.put((byte) discDifference);
+        buffer.put((byte) moveCount);
+        buffer.put(moves, 0, moveCount);
+    }
+
+    /**
+     * Read a record at the position of a buffer
+     *
+     * @param buffer buffer holding an encoded record
+     * @return the record
+     * @throws BufferUnderflowException if the buffer ends inside the record
+     */
+    public static GameRecord decode(ByteBuffer buffer) {
+        AIType[] types = AIType.values();
+        GameRecord record = new GameRecord(types[buffer.get()], types[buffer.get()], buffer.getLong());
+        record.winner = buffer.get();
+        record.discDifference = buffer.get();
+        record.moveCount = buffer.get() & 0xff;
+        record.moves = new byte[Math.max(record.moveCount, 1)];
+        buffer.get(record.moves, 0, record.moveCount);
+        return record;
+    }
+
+    /**
+     * Replay the moves from the initial position
+     *
+     * @param visitor called with every position and the player to move, before the move is played,
+     *                may be null
+     * @return the final state of the game
+     */
+    public Game replay(PositionVisitor visitor) {
+        Game game = new Game();
+        game.init();
+        int turn = Game.BLACK;
+        for (int i = 0; i < moveCount; i++) {
+            int[] move = getMove(i);
+            if (!game.legalMove(move[0], move[1], turn, false)) {
+                // A player without a legal move passed before this move
+                turn = Game.toggleTurn(turn);
+                if (!game.legalMove(move[0], move[1], turn, false))
+                    throw new IllegalStateException("Illegal move " + i + " in game record");
+            }
+            if (visitor != null)
+                visitor.visit(game, turn);
+            game.placeDisk(move[0], move[1], turn);
+            turn = Game.toggleTurn(turn);
+        }
+        return game;
+    }
+
+    /**
+     * Receives the positions of a replayed game
+     */
+    public interface PositionVisitor {
+        void visit(Game game, int turn);
+    }
+}
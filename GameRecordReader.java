@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the game records of a log written by GameRecordWriter. The log is memory-mapped,
+ * so reading does not copy the file into the heap. A record cut off at the end of the file,
+ * for example by a crash while writing, is treated as the end of the log.
+ * <p>
+ * Run as: java GameRecordReader logFile, to replay every game and print the results.
+ */
+public class GameRecordReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Open a log for reading
+     *
+     * @param path log file
+     * @throws IOException if the file cannot be read or is not a game log
+     */
+    public GameRecordReader(Path path) throws IOException {
+        this(path, GameRecordWriter.FILE_HEADER_SIZE);
+    }
+
+    /**
+     * Open a log for reading from an offset, such as one returned by {@link #position()}
+     *
+     * @param path   log file
+     * @param offset byte offset of the first record to read
+     * @throws IOException if the file cannot be read or is not a game log
+     */
+    public GameRecordReader(Path path, long offset) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        checkHeader(channel);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        buffer.position((int) Math.max(offset, GameRecordWriter.FILE_HEADER_SIZE));
+    }
+
+    /**
+     * The next record of the log
+     *
+     * @return the record, null at the end of the log
+     */
+    public GameRecord next() {
+        if (buffer.remaining() < GameRecord.HEADER_SIZE)
+            return null;
+        int start = buffer.position();
+        try {
+            return GameRecord.decode(buffer);
+        } catch (BufferUnderflowException e) {
+            buffer.position(start);
+            return null;
+        }
+    }
+
+    /**
+     * Byte offset after the last record read, to continue reading the log later
+     */
+    public long position() {
+        return buffer.position();
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Check the header of a log
+     *
+     * @param channel open log file
+     * @throws IOException if the file is not a game log of the current board size
+     */
+    static void checkHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(GameRecordWriter.FILE_HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < GameRecordWriter.FILE_HEADER_SIZE || header.getInt() != GameRecordWriter.MAGIC)
+            throw new IOException("Not a game record log");
+        if (header.get() != GameRecordWriter.VERSION)
+            throw new IOException("Unsupported game record version");
+        if (header.get() != Game.BOARD_SIZE)
+            throw new IOException("Game record log is for another board size");
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: java GameRecordReader logFile");
+            System.exit(0);
+        }
+        int[] wins = new int[3];
+        int games = 0;
+        try (GameRecordReader reader = new GameRecordReader(Path.of(args[0]))) {
+            GameRecord record;
+            while ((record = reader.next()) != null) {
+                Game game = record.replay(null);
+                if (game.getWinner() != record.winner)
+                    System.out.println("Game " + games + " replays to a different result");
+                wins[record.winner]++;
+                games++;
+            }
+        }
+        System.out.println("===========================");
+        System.out.println("Total number of games = " + games);
+        System.out.println("White won " + wins[Game.WHITE] + " times");
+        System.out.println("Black won " + wins[Game.BLACK] + " times");
+        System.out.println("Number of tied games = " + wins[Game.EMPTY]);
+        System.out.println("===========================");
+    }
+}
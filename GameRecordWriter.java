@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Appends game records to a log file. Game threads only hand records to a queue, a single
+ * background thread encodes them into a buffer and writes it to the file, so any number of
+ * games can record concurrently without waiting on the disk.
+ * <p>
+ * A log starts with the 4 bytes "OTHR", a version byte and the board size, followed by
+ * the records back to back.
+ */
+public class GameRecordWriter implements AutoCloseable {
+    public static final int MAGIC = 0x4f544852;
+    public static final int VERSION = 1;
+    public static final int FILE_HEADER_SIZE = 6;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Queued to tell the writer thread to finish
+    private static final GameRecord END = new GameRecord(AIType.Random, AIType.Random, 0);
+
+    private final FileChannel channel;
+    private final LinkedBlockingQueue<GameRecord> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile IOException failure;
+
+    /**
+     * Open a log for appending, creating it if needed
+     *
+     * @param path log file
+     * @throws IOException if the file cannot be opened or is not a game log
+     */
+    public GameRecordWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.READ);
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).put((byte) VERSION).put((byte) Game.BOARD_SIZE).flip();
+            channel.write(header);
+            channel.position(channel.size());
+        } else {
+            // Drop a record cut off by a crash, new records go right after the last complete one
+            long end;
+            try (GameRecordReader reader = new GameRecordReader(path)) {
+                while (reader.next() != null) ;
+                end = reader.position();
+            }
+            channel.truncate(end);
+            channel.position(end);
+        }
+        writer = new Thread(this::drain, "game-record-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue a finished game for writing, never blocks
+     *
+     * @param record the game
+     * @throws IOException if an earlier write failed
+     */
+    public void append(GameRecord record) throws IOException {
+        if (failure != null)
+            throw failure;
+        queue.add(record);
+    }
+
+    /**
+     * Write all queued records and close the file
+     *
+     * @throws IOException if a write failed
+     */
+    public void close() throws IOException {
+        queue.add(END);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null)
+            throw failure;
+    }
+
+    private void drain() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        ArrayList<GameRecord> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                boolean end = false;
+                for (GameRecord record : batch) {
+                    if (record == END) {
+                        end = true;
+                        continue;
+                    }
+                    if (buffer.remaining() < record.encodedSize())
+                        flush(buffer);
+                    record.encode(buffer);
+                }
+                batch.clear();
+                flush(buffer);
+                if (end) {
+                    channel.force(false);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+}
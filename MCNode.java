@@ -1,20 +1,16 @@
 import java.util.*;
 
 public class MCNode {
-    /**
-     * Exploration parameter for UCT calculation
-     */
-    private final static double EXP_PARAM = Math.sqrt(2);
-
     /**
      * Total simulation counts
      */
     public int totalSim;
 
     /**
-     * Number of wins in simulations for each color
+     * Number of wins in simulations for each color. A simulation cut off before the end of
+     * the game adds its estimated win probability, so the counts can be fractional.
      */
-    public int[] wins;
+    public double[] wins;
 
     /**
      * Game state
@@ -33,26 +29,143 @@ public class MCNode {
 
     public ArrayList<MCNode> parents;
 
+    /**
+     * Canonical bitboards of the game state under the 8 board symmetries, used to merge
+     * transpositions in the node map
+     */
+    public long[] key;
+
+    /**
+     * Winner by stable disks, -1 if the game is still open and UNKNOWN until checked
+     */
+    private int proven = UNKNOWN;
+    private static final int UNKNOWN = -2;
+
+    /**
+     * Whether the children of this node were pruned to save memory. Its statistics still
+     * count the pruned simulations, so they are not added again when it is expanded anew.
+     */
+    public boolean collapsed;
+
+    /**
+     * Square of the move leading to each child and the prior of the move, in the order of
+     * children. They belong to the move and not to the child, which can be a transposition
+     * reached by other moves from other parents.
+     */
+    private int[] childSquares = new int[8];
+    private float[] childPriors = new float[8];
+
+    /**
+     * All-moves-as-first statistics of the player to move here, by square: simulations through
+     * this node in which the player played the square at any later point, and the wins of the
+     * player in them. Only kept with RAVE on, see EngineConfig.raveEquivalence.
+     */
+    private int[] amafSims;
+    private double[] amafWins;
+
     public MCNode(Game game, int turn) {
         this.game = game;
         this.turn = turn;
         totalSim = 0;
-        wins = new int[Othello.PLAYER_SIZE];
-        children = new HashSet<>();
+        wins = new double[Game.PLAYER_SIZE];
+        // Children are visited in the order they were added, so a seeded search repeats itself
+        children = new LinkedHashSet<>();
         parents = new ArrayList<>();
     }
 
+    /**
+     * Clear a node taken from the pool of the engine for a new position, see MonteCarlo.newNode
+     *
+     * @param turn whose turn it is at the new position
+     */
+    void recycle(int turn) {
+        this.turn = turn;
+        totalSim = 0;
+        Arrays.fill(wins, 0);
+        children.clear();
+        parents.clear();
+        key = null;
+        proven = UNKNOWN;
+        collapsed = false;
+        if (amafSims != null) {
+            Arrays.fill(amafSims, 0);
+            Arrays.fill(amafWins, 0);
+        }
+    }
+
+    /**
+     * Link a child unless it is one already. The prior of the move is computed here, once.
+     *
+     * @param child  the node after the move
+     * @param move   row and column of the move
+     * @param search the engine running the search
+     */
+    void addChild(MCNode child, int[] move, MonteCarlo search) {
+        if (!children.add(child))
+            return;
+        int i = children.size() - 1;
+        if (i == childSquares.length) {
+            childSquares = Arrays.copyOf(childSquares, 2 * i);
+            childPriors = Arrays.copyOf(childPriors, 2 * i);
+        }
+        childSquares[i] = BoardBits.square(move[0], move[1]);
+        childPriors[i] = search.config.priorWeight > 0 ? (float) search.prior.prior(game, move[0], move[1], turn) : 0;
+    }
+
+    /**
+     * Square of the move leading to a child
+     */
+    int squareOf(MCNode child) {
+        int i = 0;
+        for (MCNode c : children) {
+            if (c == child)
+                return childSquares[i];
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Count a simulation in the AMAF statistics
+     *
+     * @param squares squares played from here to the end of the simulation
+     * @param colors  player of each of the squares
+     * @param from    first move played from this node
+     * @param to      end of the moves
+     * @param result  share of the simulation won by each color
+     */
+    void updateAmaf(int[] squares, int[] colors, int from, int to, double[] result) {
+        if (amafSims == null) {
+            amafSims = new int[BoardBits.SQUARES];
+            amafWins = new double[BoardBits.SQUARES];
+        }
+        // A square is played at most once in a game, so every move is the first on its square
+        for (int i = from; i < to; i++) {
+            if (colors[i] == turn) {
+                amafSims[squares[i]]++;
+                amafWins[squares[i]] += result[turn];
+            }
+        }
+    }
+
     /**
      * Run basic Monte Carlo simulation beginning from current node
      *
-     * @return
+     * @param search the engine running the search
+     * @return share of the simulation won by each color
      */
-    public int naiveSimulate() {
+    public double[] naiveSimulate(MonteCarlo search) {
+        return naiveSimulate(search, true);
+    }
+
+    private double[] naiveSimulate(MonteCarlo search, boolean root) {
         int opponent = Game.toggleTurn(turn);
-        int winner;
+        double[] result;
         if (children.isEmpty()) {
-            if (totalSim == 0) {
-                winner = rollout();
+            if (!root && provenWinner(search) >= 0) {
+                result = result(provenWinner(search));
+            } else if (totalSim == 0) {
+                result = rollout(search);
             } else {
                 ArrayList<int[]> legalMoves = game.getLegalMoves(turn);
                 int nextTurn = opponent;
@@ -61,36 +174,36 @@ public class MCNode {
                     legalMoves = game.getLegalMoves(opponent);
                     if (legalMoves.isEmpty()) {
                         // If opponent has no moves, this node is a terminal state
-                        winner = game.getWinner();
-                        return winner;
+                        return result(game.getWinner());
                     }
                     nextTurn = turn;
                 }
                 // Expansion phase: add a child for each of next move
-                for (int[] move : legalMoves) {
-                    Game gameCopy = new Game();
-                    gameCopy.board = Util.deepCopy(game.board);
-                    gameCopy.placeDisk(move[0], move[1], turn);
-                    MCNode child = new MCNode(gameCopy, nextTurn);
-                    children.add(child);
-                }
-                winner = children.iterator().next().naiveSimulate();
+                for (int[] move : legalMoves)
+                    addChild(search.newNode(game, move, turn, nextTurn), move, search);
+                MCNode firstChild = children.iterator().next();
+                search.trace(this, firstChild);
+                result = firstChild.naiveSimulate(search, false);
             }
         } else {
-            MCNode bestChild = getMaxUCTChild();
-            winner = bestChild.naiveSimulate();
+            MCNode bestChild = getMaxUCTChild(search.config);
+            search.trace(this, bestChild);
+            result = bestChild.naiveSimulate(search, false);
         }
         totalSim++;
-        if (winner == Game.BLACK || winner == Game.WHITE)
-            wins[winner]++;
-        return winner;
+        for (int i = 0; i < wins.length; i++)
+            wins[i] += result[i];
+        if (root)
+            search.updateAmaf(result);
+        return result;
     }
 
-    public MCNode getMaxUCTChild() {
+    public MCNode getMaxUCTChild(EngineConfig config) {
         double maxUCT = 0;
         MCNode bestChild = null;
+        int i = 0;
         for (MCNode child : children) {
-            double uct = uct(child);
+            double uct = uct(child, i++, config);
             if (bestChild == null || uct > maxUCT) {
                 maxUCT = uct;
                 bestChild = child;
@@ -113,41 +226,84 @@ public class MCNode {
     }
 
     /**
-     * Upper Confidence Bound 1 applied to trees, highest UCT child will be chosen for exploration
+     * Upper Confidence Bound 1 applied to trees, highest UCT child will be chosen for exploration.
+     * With RAVE on, the win rate of the child is blended with the AMAF win rate of its square,
+     * with a weight that fades as the child gets simulations of its own. With priors on, the
+     * prior of the move adds a progressive bias that also fades with the simulations of the child.
      *
-     * @param child child node
+     * @param child  child node
+     * @param index  position of the child in children
+     * @param config exploration parameter, RAVE equivalence and prior weight, higher
+     *               exploration favors less simulated children
      * @return UCT value for a child
      */
-    private double uct(MCNode child) {
-        if (child.totalSim == 0)
-            return Double.MAX_VALUE;
-        return child.wins[turn] * 1.0 / child.totalSim + EXP_PARAM * Math.sqrt(Math.log(totalSim) / child.totalSim);
+    private double uct(MCNode child, int index, EngineConfig config) {
+        int square = childSquares[index];
+        if (child.totalSim == 0) {
+            if (config.priorWeight <= 0 || totalSim == 0)
+                return Double.MAX_VALUE;
+            // First play urgency: an unvisited child is valued at the win rate of this node, so
+            // a child with a poor prior waits until the others have been tried and found worse
+            return wins[turn] / totalSim + config.expParam * Math.sqrt(Math.log(totalSim))
+                + config.priorWeight * childPriors[index];
+        }
+        double winRate = child.wins[turn] * 1.0 / child.totalSim;
+        if (config.raveEquivalence > 0 && amafSims != null && amafSims[square] > 0) {
+            double k = config.raveEquivalence;
+            double beta = Math.sqrt(k / (3 * child.totalSim + k));
+            winRate = (1 - beta) * winRate + beta * amafWins[square] / amafSims[square];
+        }
+        return winRate + config.expParam * Math.sqrt(Math.log(totalSim) / child.totalSim)
+            + config.priorWeight * childPriors[index] / (child.totalSim + 1);
     }
 
     /**
-     * Randomly plays a game from the current board state and see if player wins
+     * Randomly plays a game from the current board state and see if player wins.
+     * With rolloutPlies of the configuration set, the game is cut off after that many moves
+     * and the position is scored by the evaluator of the engine instead. With stableCheckPlies
+     * set, the game ends as soon as one color has more than half the board in stable disks.
      *
-     * @return winner player
+     * @param search the engine running the search
+     * @return share of the simulation won by each color
      */
-    public int rollout() {
+    public double[] rollout(MonteCarlo search) {
         Game gameCopy = new Game();
         gameCopy.board = Util.deepCopy(game.board);
         int player = turn;
         int opponent = Game.toggleTurn(player);
         ArrayList<int[]> legalMoves;
+        int plies = 0;
+        int disks = 0;
+        int stableCheckPlies = search.config.stableCheckPlies;
+        if (stableCheckPlies > 0) {
+            int[] diskCount = gameCopy.getDiskCount();
+            disks = diskCount[Game.BLACK] + diskCount[Game.WHITE];
+        }
+        int half = BoardBits.SQUARES / 2;
         while (true) {
             legalMoves = gameCopy.getLegalMoves(player);
 
+            if (stableCheckPlies > 0 && disks + plies > half && plies % stableCheckPlies == 0) {
+                int winner = BoardBits.decidedWinner(BoardBits.toBits(gameCopy.board, Game.BLACK),
+                    BoardBits.toBits(gameCopy.board, Game.WHITE));
+                if (winner >= 0)
+                    return result(winner);
+            }
             if (!legalMoves.isEmpty()) {
+                if (plies == search.config.rolloutPlies) {
+                    double black = search.evaluator.winProbability(gameCopy, player, Game.BLACK);
+                    return new double[]{black, 1 - black};
+                }
                 // If there is a legal move, randomly make a move
-                Random rand = new Random();
-                int[] move = legalMoves.get(rand.nextInt(legalMoves.size()));
+                int[] move = legalMoves.get(search.random.nextInt(legalMoves.size()));
                 gameCopy.placeDisk(move[0], move[1], player);
+                search.played(BoardBits.square(move[0], move[1]), player);
+                plies++;
             } else {
                 // Check terminal condition
                 boolean opponentHasMove = !gameCopy.getLegalMoves(opponent).isEmpty();
                 if (!opponentHasMove)
-                    return gameCopy.getWinner();
+                    return result(gameCopy.getWinner());
             }
 //            Util.printBoard(gameCopy.board);
             // Switch turn
@@ -156,55 +312,28 @@ public class MCNode {
         }
     }
 
-    /**
-     * Generate all four possible board orientations by rotating 90 deg
-     *
-     * @param board game board
-     * @return four board orientations
-     */
-    public static int[][][] allBoardOrientations(int[][] board) {
-        final int N = board.length;
-        int[][][] allBoards = new int[8][][];
-        allBoards[0] = board;
-        // Consider all rotations
-        for (int i = 1; i < 4; i++) {
-            allBoards[i] = new int[N][N];
-            // Consider all squares one by one
-            for (int x = 0; x < N / 2; x++) {
-                // Consider elements in group of 4 in current square
-                for (int y = x; y < N - x - 1; y++) {
-                    allBoards[i][x][y] = allBoards[i - 1][y][N - 1 - x];
-                    allBoards[i][y][N - 1 - x] = allBoards[i - 1][N - 1 - x][N - 1 - y];
-                    allBoards[i][N - 1 - x][N - 1 - y] = allBoards[i - 1][N - 1 - y][x];
-                    allBoards[i][N - 1 - y][x] = allBoards[i - 1][x][y];
-                }
-            }
-        }
-        // Consider all mirror images
-        for (int i = 4; i < 8; i++) {
-            allBoards[i] = new int[N][N];
-            for (int x = 0; x < N; x++)
-                for (int y = 0; y < N; y++)
-                    allBoards[i][x][y] = allBoards[i - 4][N - x - 1][y];
-        }
-        return allBoards;
-    }
-
     /**
      * Monte Carlo simulation with node merging, simulate about 50% more games
+     *
+     * @param search the engine running the search
      */
-    public void smartSimulate() {
+    public void smartSimulate(MonteCarlo search) {
         MCNode selectedNode = this;
         // Selection phase: select most promising child
         while (!selectedNode.children.isEmpty()) {
-            selectedNode = selectedNode.getMaxUCTChild();
+            MCNode next = selectedNode.getMaxUCTChild(search.config);
+            search.trace(selectedNode, next);
+            selectedNode = next;
         }
-        int winner = -1;
+        double[] result = null;
         int childTotalSim = 0;
-        int[] childWins = new int[Othello.PLAYER_SIZE];
-        if (selectedNode.totalSim == 0) {
+        double[] childWins = new double[Game.PLAYER_SIZE];
+        if (selectedNode != this && selectedNode.provenWinner(search) >= 0) {
+            // The result is already decided, no need to expand or simulate
+            result = result(selectedNode.provenWinner(search));
+        } else if (selectedNode.totalSim == 0) {
             // Simulation phase
-            winner = selectedNode.rollout();
+            result = selectedNode.rollout(search);
         }
         else {
             HashSet<MCNode> children = selectedNode.children;
@@ -218,51 +347,50 @@ public class MCNode {
                 nextTurn = turn;
                 if (legalMoves.isEmpty()) {
                     // neither player has legal moves, terminal state
-                    winner = game.getWinner();
+                    result = result(game.getWinner());
                 }
             }
             // Expansion phase: create children
-            if (winner == -1) {
+            if (result == null) {
                 for (int[] move : legalMoves) {
-                    Game gameCopy = new Game();
-                    gameCopy.board = Util.deepCopy(game.board);
-                    gameCopy.placeDisk(move[0], move[1], turn);
-                    int[][][] allBoards = allBoardOrientations(gameCopy.board);
-                    boolean duplicate = false;
-                    for (int i = 0; i < allBoards.length; i++) {
-                        List<Integer> list = Util.toFlatList(allBoards[i]);
-                        if (MonteCarlo.nodeMap.containsKey(list)) {
-                            MCNode sameNode = MonteCarlo.nodeMap.get(list);
-                            if (sameNode.turn == nextTurn) {
-                                if (!children.contains(sameNode)) {
-                                    children.add(sameNode);
-                                    sameNode.parents.add(selectedNode);
-                                    childTotalSim = sameNode.totalSim;
-                                    for (int j = 0; j < childWins.length; j++)
-                                        childWins[j] = sameNode.wins[j];
-                                }
-                                duplicate = true;
-                                break;
+                    MCNode child = search.newNode(game, move, turn, nextTurn);
+                    long[] canonical = BoardBits.canonicalize(BoardBits.toBits(child.game.board, Game.BLACK),
+                        BoardBits.toBits(child.game.board, Game.WHITE));
+                    Long key = BoardBits.hash(canonical);
+                    MCNode sameNode = search.nodeMap.get(key);
+                    boolean duplicate = sameNode != null && sameNode.turn == nextTurn
+                        && Arrays.equals(sameNode.key, canonical);
+                    if (duplicate) {
+                        search.release(child);
+                        if (!children.contains(sameNode)) {
+                            selectedNode.addChild(sameNode, move, search);
+                            sameNode.parents.add(selectedNode);
+                            if (!selectedNode.collapsed) {
+                                childTotalSim = sameNode.totalSim;
+                                for (int j = 0; j < childWins.length; j++)
+                                    childWins[j] = sameNode.wins[j];
                             }
                         }
-                    }
-                    if (!duplicate) {
-                        MCNode child = new MCNode(gameCopy, nextTurn);
-                        children.add(child);
+                    } else {
+                        child.key = canonical;
+                        selectedNode.addChild(child, move, search);
                         child.parents.add(selectedNode);
-                        List<Integer> key = Util.toFlatList(gameCopy.board);
-                        MonteCarlo.nodeMap.put(key, child);
+                        search.nodeMap.put(key, child);
 //                Util.printBoard(child.game.board);
                     }
                 }
-                selectedNode = selectedNode.getMaxUCTChild();
-                winner = selectedNode.rollout();
+                MCNode next = selectedNode.getMaxUCTChild(search.config);
+                search.trace(selectedNode, next);
+                selectedNode = next;
+                result = selectedNode.rollout(search);
             }
         }
 
+        search.updateAmaf(result);
+
         // Propagation phase: propagate winner statistics to parents
-        if (winner == Game.BLACK || winner == Game.WHITE)
-            childWins[winner]++;
+        for (int i = 0; i < childWins.length; i++)
+            childWins[i] += result[i];
         childTotalSim++;
         Queue<MCNode> nodes = new LinkedList<>();
         nodes.add(selectedNode);
@@ -276,6 +404,41 @@ public class MCNode {
         }
     }
 
+    /**
+     * Winner of the game at this node if it is decided by stable disks alone, such a node
+     * is never expanded unless it is the root of the search. Checked once and remembered.
+     *
+     * @param search the engine running the search
+     * @return the winner, -1 if the game is still open
+     */
+    public int provenWinner(MonteCarlo search) {
+        if (proven == UNKNOWN) {
+            if (search.config.stableCheckPlies < 0)
+                proven = -1;
+            else if (key != null)
+                // Stable disks do not change under the board symmetries, the canonical key will do
+                proven = BoardBits.decidedWinner(Arrays.copyOfRange(key, 0, BoardBits.WORDS),
+                    Arrays.copyOfRange(key, BoardBits.WORDS, 2 * BoardBits.WORDS));
+            else
+                proven = BoardBits.decidedWinner(BoardBits.toBits(game.board, Game.BLACK),
+                    BoardBits.toBits(game.board, Game.WHITE));
+        }
+        return proven;
+    }
+
+    /**
+     * Share of a finished game won by each color, nothing for a tie
+     *
+     * @param winner the winner player, EMPTY for a tie
+     * @return wins to add for each color
+     */
+    public static double[] result(int winner) {
+        double[] result = new double[Game.PLAYER_SIZE];
+        if (winner == Game.BLACK || winner == Game.WHITE)
+            result[winner] = 1;
+        return result;
+    }
+
     /**
      * Finds maximum depth of Monte Carlo tree
      * @return Depth of Monte Carlo tree
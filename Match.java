@@ -0,0 +1,278 @@
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays two engines against each other on all cores until a sequential probability ratio
+ * test decides between "the first engine is no stronger than elo0" and "the first engine is
+ * at least elo1 stronger", so clear results stop early instead of running a fixed number of games.
+ * Games come in pairs with the same random opening and the colors swapped. The openings
+ * and the random choices of the engines come from the seed of the run, see Seeds.
+ * <p>
+ * An engine is an AIType name with optional constants of EngineConfig, for example
+ * "MonteCarlo:expParam=1.0,simTime=200". A sweep plays every value, or every combination
+ * of values, of the given constants against the base engine.
+ * <p>
+ * Run as one of the following:<br>
+ * java Match ENGINE_A ENGINE_B                            (test A against B)<br>
+ * java Match sweep BASE NAME=V1,V2,... [NAME=V1,V2,...]   (test every grid point against BASE)<br>
+ * Options are set with JVM options:<br>
+ * -Dothello.sprt=elo0,elo1,alpha,beta   (hypotheses and error rates, 0,10,0.05,0.05 by default)<br>
+ * -Dothello.matchThreads=N              (games played at the same time, all cores by default)<br>
+ * -Dothello.maxGames=N                  (give up without a verdict after N games, 20000 by default)<br>
+ * -Dothello.openingPlies=N              (random moves played before the engines take over, 4 by default)
+ */
+public class Match {
+    private static final int THREADS = Integer.getInteger("othello.matchThreads", Runtime.getRuntime().availableProcessors());
+    private static final int MAX_GAMES = Integer.getInteger("othello.maxGames", 20000);
+    private static final int OPENING_PLIES = Integer.getInteger("othello.openingPlies", 4);
+    private static final String SPRT = System.getProperty("othello.sprt", "0,10,0.05,0.05");
+
+    // Seed of the random openings, a different stream than the seeds of the games
+    private static final long OPENINGS = Seeds.derive(Seeds.BASE, -1);
+
+    // Print the running score every this many games
+    private static final int REPORT_INTERVAL = 20;
+
+    private final AIType typeA;
+    private final EngineConfig configA;
+    private final AIType typeB;
+    private final EngineConfig configB;
+    private final double elo0;
+    private final double elo1;
+    private final double lowerBound;
+    private final double upperBound;
+
+    // Results of engine A
+    private int wins;
+    private int draws;
+    private int losses;
+    private String verdict;
+
+    /**
+     * Set up a match between two engines
+     *
+     * @param a first engine, the one the hypotheses are about
+     * @param b second engine
+     */
+    public Match(String a, String b) {
+        typeA = type(a);
+        configA = config(a);
+        typeB = type(b);
+        configB = config(b);
+        String[] sprt = SPRT.split(",");
+        if (sprt.length != 4)
+            throw new IllegalArgumentException("othello.sprt must be elo0,elo1,alpha,beta");
+        elo0 = Double.parseDouble(sprt[0]);
+        elo1 = Double.parseDouble(sprt[1]);
+        double alpha = Double.parseDouble(sprt[2]);
+        double beta = Double.parseDouble(sprt[3]);
+        lowerBound = Math.log(beta / (1 - alpha));
+        upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Play games until the test reaches a verdict or MAX_GAMES games are played
+     *
+     * @return "H1" if A is stronger by at least elo1, "H0" if not stronger than elo0,
+     * "inconclusive" if the game limit was reached first
+     */
+    public String run() throws InterruptedException {
+        System.out.println("seed " + Seeds.BASE);
+        AtomicInteger nextGame = new AtomicInteger();
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread worker = new Thread(() -> {
+                // Every thread has its own players, a minimax search cannot be shared by two games
+                Player[] a = {new Player(typeA, Game.BLACK, configA), new Player(typeA, Game.WHITE, configA)};
+                Player[] b = {new Player(typeB, Game.BLACK, configB), new Player(typeB, Game.WHITE, configB)};
+                int g;
+                while (!finished() && (g = nextGame.getAndIncrement()) < MAX_GAMES) {
+                    // Even games give A black, odd games replay the opening with the colors swapped
+                    Player[] players = g % 2 == 0 ? new Player[]{a[Game.BLACK], b[Game.WHITE]}
+                        : new Player[]{b[Game.BLACK], a[Game.WHITE]};
+                    long seed = Seeds.derive(Seeds.BASE, g);
+                    players[Game.BLACK].setSeed(Seeds.derive(seed, Game.BLACK));
+                    players[Game.WHITE].setSeed(Seeds.derive(seed, Game.WHITE));
+                    int winner = play(players, g / 2).getWinner();
+                    int colorA = g % 2 == 0 ? Game.BLACK : Game.WHITE;
+                    record(winner == Game.EMPTY ? 0 : winner == colorA ? 1 : -1);
+                }
+            }, "match-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers)
+            worker.join();
+        synchronized (this) {
+            if (verdict == null)
+                verdict = "inconclusive";
+            System.out.println(summary() + " -> " + verdict);
+            return verdict;
+        }
+    }
+
+    /**
+     * Play one game from a random opening
+     *
+     * @param players the black and the white player
+     * @param opening number of the opening, the same number gives the same opening
+     * @return the final position
+     */
+    static Game play(Player[] players, int opening) {
+        Game game = new Game();
+        game.init();
+        int turn = Game.BLACK;
+        SplittableRandom random = new SplittableRandom(Seeds.derive(OPENINGS, opening));
+        for (int ply = 0; ply < OPENING_PLIES && !game.endReached(); ply++) {
+            ArrayList<int[]> moves = game.getLegalMoves(turn);
+            if (!moves.isEmpty()) {
+                int[] move = moves.get(random.nextInt(moves.size()));
+                game.placeDisk(move[0], move[1], turn);
+            }
+            turn = Game.toggleTurn(turn);
+        }
+        while (!game.endReached()) {
+            game = players[turn].strategy(game, turn);
+            turn = Game.toggleTurn(turn);
+        }
+        return game;
+    }
+
+    private synchronized boolean finished() {
+        return verdict != null;
+    }
+
+    /**
+     * Count the result of a game for A and check the test
+     *
+     * @param score 1 for a win of A, 0 for a tie, -1 for a loss
+     */
+    private synchronized void record(int score) {
+        // Games still running when the test ended do not change the verdict
+        if (verdict != null)
+            return;
+        if (score > 0)
+            wins++;
+        else if (score < 0)
+            losses++;
+        else
+            draws++;
+        double llr = llr();
+        if (llr >= upperBound)
+            verdict = "H1";
+        else if (llr <= lowerBound)
+            verdict = "H0";
+        if (games() % REPORT_INTERVAL == 0)
+            System.out.println(summary());
+    }
+
+    /**
+     * Log-likelihood ratio of elo1 against elo0, using the normal approximation of the
+     * score distribution of the games played so far
+     */
+    synchronized double llr() {
+        int n = games();
+        if (n == 0)
+            return 0;
+        double score = score();
+        // One extra win and one extra loss keep the variance above 0 when every game went the
+        // same way, so a one-sided match still reaches a verdict
+        double variance = ((wins + 1) * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score)
+            + (losses + 1) * score * score) / (n + 2);
+        double s0 = expectedScore(elo0);
+        double s1 = expectedScore(elo1);
+        return n * (s1 - s0) * (2 * score - s0 - s1) / (2 * variance);
+    }
+
+    synchronized int games() {
+        return wins + draws + losses;
+    }
+
+    /**
+     * Share of the points won by A, a tie is half a point
+     */
+    synchronized double score() {
+        return (wins + 0.5 * draws) / games();
+    }
+
+    /**
+     * Elo difference of A over B estimated from the score
+     */
+    synchronized double elo() {
+        double score = Math.min(Math.max(score(), 1e-3), 1 - 1e-3);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    synchronized String summary() {
+        return String.format("games %d  W/D/L %d/%d/%d  elo %+.1f  LLR %.2f [%.2f, %.2f]", games(),
+            wins, draws, losses, elo(), llr(), lowerBound, upperBound);
+    }
+
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    static AIType type(String engine) {
+        int colon = engine.indexOf(':');
+        return AIType.valueOf(colon < 0 ? engine : engine.substring(0, colon));
+    }
+
+    static EngineConfig config(String engine) {
+        EngineConfig config = new EngineConfig();
+        // Engines run from the command line keep the console for their results
+        config.verbose = false;
+        int colon = engine.indexOf(':');
+        if (colon >= 0)
+            config.setAll(engine.substring(colon + 1));
+        return config;
+    }
+
+    /**
+     * Test every point of a grid of constants against a base engine
+     *
+     * @param base  the base engine
+     * @param grids constants and their values, such as "expParam=0.5,1.0,1.5"
+     */
+    private static void sweep(String base, String[] grids) throws InterruptedException {
+        ArrayList<String> points = new ArrayList<>();
+        points.add("");
+        for (String grid : grids) {
+            int eq = grid.indexOf('=');
+            if (eq < 0)
+                throw new IllegalArgumentException("expected NAME=V1,V2,..., got " + grid);
+            ArrayList<String> next = new ArrayList<>();
+            for (String point : points)
+                for (String value : grid.substring(eq + 1).split(","))
+                    next.add(point + (point.isEmpty() ? "" : ",") + grid.substring(0, eq) + "=" + value);
+            points = next;
+        }
+        ArrayList<String> results = new ArrayList<>();
+        for (String point : points) {
+            String candidate = base + (base.indexOf(':') < 0 ? ":" : ",") + point;
+            System.out.println(candidate + " vs " + base);
+            Match match = new Match(candidate, base);
+            String verdict = match.run();
+            results.add(String.format("%-40s %s  %s", point, match.summary(), verdict));
+        }
+        System.out.println();
+        for (String result : results)
+            System.out.println(result);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 2 && !args[0].equals("sweep")) {
+            Warmup.run(System.out);
+            new Match(args[0], args[1]).run();
+        } else if (args.length >= 3 && args[0].equals("sweep")) {
+            Warmup.run(System.out);
+            String[] grids = new String[args.length - 2];
+            System.arraycopy(args, 2, grids, 0, grids.length);
+            sweep(args[1], grids);
+        } else {
+            System.out.println("Usage: java Match ENGINE_A ENGINE_B");
+            System.out.println("       java Match sweep BASE NAME=V1,V2,... [NAME=V1,V2,...]");
+            System.out.println("An engine is an AIType with optional constants, such as MonteCarlo:expParam=1.0,simTime=200");
+        }
+    }
+}
@@ -2,38 +2,271 @@ import java.util.*;
 
 public class MonteCarlo {
 
-    // How many seconds you want to run simulation for, in millisec
-    private static int SIM_TIME_WHITE = 1000;
-    private static int SIM_TIME_BLACK = 2000;
-    private static int SIM_TIME_DEFAULT = 1000;
+    // Thinking time, simulation limit, exploration and simulation cutoffs of this engine
+    public final EngineConfig config;
 
-    // How many games to simulate
-    public static int SIM_GAMES = 200000;
+    // Scores simulations cut off by config.rolloutPlies
+    public Evaluator evaluator = new PointEvaluator();
 
-    public static HashMap<List, MCNode> nodeMap;
+    // Scores the moves of expanded nodes when config.priorWeight is set
+    public PriorProvider prior = new PointPrior();
 
-    public static GameStats stats;
+    // Positions of the running search up to symmetry, used to merge transpositions
+    final HashMap<Long, MCNode> nodeMap = new HashMap<>();
 
-    public MonteCarlo(){}
+    // Picks the moves of the simulations
+    SplittableRandom random = new SplittableRandom(Seeds.BASE);
 
-    public static Game makeMove(Game game, int color, boolean naive) {
-        nodeMap = new HashMap<>();
+    public GameStats stats;
+
+    // Print the size of the tree and the heap in use every second of a search, set with -Dothello.treeStats=true
+    private static final boolean TREESTATS = Boolean.getBoolean("othello.treeStats");
+    private static final int REPORT_MILLIS = 1000;
+
+    // A full tree is pruned down to this share of config.maxNodes
+    private static final double PRUNE_TARGET = 0.75;
+
+    // Nodes pruned from the tree or discarded as transpositions, reused for new positions
+    private final ArrayDeque<MCNode> pool = new ArrayDeque<>();
+
+    // Nodes in the tree of the running search, and nodes pruned from it so far
+    private int liveNodes;
+    private long prunedNodes;
+
+    // Moves of the running simulation with their players, and the tree nodes the first
+    // pathLength of them were played from, for the AMAF statistics of RAVE
+    private final int[] traceSquares = new int[BoardBits.SQUARES];
+    private final int[] traceColors = new int[BoardBits.SQUARES];
+    private final MCNode[] path = new MCNode[BoardBits.SQUARES];
+    private int traceLength;
+    private int pathLength;
+
+    /**
+     * Receives the best multiPv moves every snapshotMillis of a search and once at its end,
+     * null for none
+     */
+    public AnalysisListener listener;
+    public int multiPv = 1;
+    public int snapshotMillis = 1000;
+
+    /**
+     * Whether a search ends as soon as the root has a single move, true for playing games.
+     * Analysis that reports win rates clears it so forced moves get the full budget too.
+     */
+    public boolean stopOnForcedMove = true;
+
+    /**
+     * Set to end a running search early, the best move found so far is used
+     */
+    public volatile boolean stop;
+
+    public MonteCarlo() {
+        this(new EngineConfig());
+    }
+
+    /**
+     * An engine with its own tuning constants. Every engine has its own search state, so
+     * engines can search at the same time, but one engine runs one search at a time.
+     *
+     * @param config thinking time, simulation limit and exploration parameter
+     */
+    public MonteCarlo(EngineConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Restart the simulations from a seed. With the same seed and a simulation limit instead
+     * of a time limit, a search returns the same tree.
+     *
+     * @param seed the seed of the random moves
+     */
+    public void setSeed(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Run Monte Carlo simulations from a position until the time or game budget runs out
+     *
+     * @param game  the current state of the game
+     * @param color the player to move
+     * @param naive true for basic Monte Carlo search, false to merge transpositions
+     * @return root of the search tree
+     */
+    public MCNode search(Game game, int color, boolean naive) {
+        nodeMap.clear();
         MCNode root = new MCNode(game, color);
+        liveNodes = 1;
+        prunedNodes = 0;
         long start = System.currentTimeMillis();
-        int activeSimTime = SIM_TIME_DEFAULT;
-        if (color == Game.WHITE) {
-            activeSimTime = SIM_TIME_WHITE;
-        } else if (color == Game.BLACK) {
-            activeSimTime = SIM_TIME_BLACK;
-        }
-        while (System.currentTimeMillis() - start < activeSimTime && root.totalSim < SIM_GAMES) {
+        long nextReport = start + REPORT_MILLIS;
+        long nextSnapshot = start + snapshotMillis;
+        int activeSimTime = config.simTime(color);
+        // A stopped search still runs until the root has children to choose from
+        while (System.currentTimeMillis() - start < activeSimTime && root.totalSim < config.simGames
+            && (!stop || root.children.isEmpty())) {
+            traceLength = pathLength = 0;
             if (naive)
-                root.naiveSimulate();
+                root.naiveSimulate(this);
             else
-                root.smartSimulate();
-            if (root.children.size() == 1)
+                root.smartSimulate(this);
+            if (stopOnForcedMove && root.children.size() == 1)
                 break;
+            if (config.maxNodes > 0 && liveNodes >= config.maxNodes)
+                prune(root);
+            if (TREESTATS && System.currentTimeMillis() >= nextReport) {
+                System.out.println(treeStats(root));
+                nextReport += REPORT_MILLIS;
+            }
+            // Taken between simulations, so the tree needs no locking
+            if (listener != null && System.currentTimeMillis() >= nextSnapshot) {
+                listener.snapshot(AnalysisSnapshot.of(root, multiPv, System.currentTimeMillis() - start, false));
+                nextSnapshot += snapshotMillis;
+            }
+        }
+        stop = false;
+        if (TREESTATS)
+            System.out.println(treeStats(root));
+        if (listener != null)
+            listener.snapshot(AnalysisSnapshot.of(root, multiPv, System.currentTimeMillis() - start, true));
+        // Only the returned tree keeps the nodes alive
+        nodeMap.clear();
+        return root;
+    }
+
+    /**
+     * Note a step down the tree of the running simulation
+     *
+     * @param parent the node the move is played from
+     * @param child  the node after the move
+     */
+    void trace(MCNode parent, MCNode child) {
+        if (config.raveEquivalence > 0) {
+            path[pathLength++] = parent;
+            played(parent.squareOf(child), parent.turn);
+        }
+    }
+
+    /**
+     * Note a move of the running simulation
+     *
+     * @param square bit index of the square
+     * @param color  the player of the move
+     */
+    void played(int square, int color) {
+        if (config.raveEquivalence > 0) {
+            traceSquares[traceLength] = square;
+            traceColors[traceLength++] = color;
         }
+    }
+
+    /**
+     * Count the finished simulation in the AMAF statistics of the tree nodes it went through
+     *
+     * @param result share of the simulation won by each color
+     */
+    void updateAmaf(double[] result) {
+        for (int i = 0; i < pathLength; i++)
+            path[i].updateAmaf(traceSquares, traceColors, i, traceLength, result);
+        pathLength = 0;
+    }
+
+    /**
+     * Node for the position after a move, taken from the pool when there is one
+     *
+     * @param game  the position before the move
+     * @param move  row and column of the move
+     * @param color the player making the move
+     * @param turn  whose turn it is after the move
+     * @return a node without statistics, children or parents
+     */
+    MCNode newNode(Game game, int[] move, int color, int turn) {
+        MCNode node = pool.poll();
+        if (node == null)
+            node = new MCNode(new Game(), turn);
+        else
+            node.recycle(turn);
+        for (int i = 0; i < Game.HEIGHT; i++)
+            System.arraycopy(game.board[i], 0, node.game.board[i], 0, Game.WIDTH);
+        node.game.placeDisk(move[0], move[1], color);
+        liveNodes++;
+        return node;
+    }
+
+    /**
+     * Return a node that did not go into the tree to the pool
+     */
+    void release(MCNode node) {
+        liveNodes--;
+        pool.push(node);
+    }
+
+    /**
+     * Cut the children of the least simulated nodes until the tree is down to PRUNE_TARGET
+     * of the node budget. A pruned node keeps its own statistics, which already count every
+     * simulation that went through its children, and is expanded again if the search comes
+     * back to it. Children that are still reached from another parent stay in the tree.
+     *
+     * @param root root of the search, never pruned
+     */
+    private void prune(MCNode root) {
+        // Every expanded node below the root, each once although transpositions have several parents
+        ArrayList<MCNode> expanded = new ArrayList<>();
+        Set<MCNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<MCNode> queue = new ArrayDeque<>(root.children);
+        while (!queue.isEmpty()) {
+            MCNode node = queue.poll();
+            if (node.children.isEmpty() || !seen.add(node))
+                continue;
+            expanded.add(node);
+            queue.addAll(node.children);
+        }
+        expanded.sort(Comparator.comparingInt(node -> node.totalSim));
+        int target = (int) (config.maxNodes * PRUNE_TARGET);
+        for (MCNode node : expanded) {
+            if (liveNodes <= target)
+                break;
+            // Nodes freed with an earlier subtree have no children left
+            if (!node.children.isEmpty())
+                collapse(node);
+        }
+    }
+
+    private void collapse(MCNode node) {
+        for (MCNode child : node.children) {
+            child.parents.remove(node);
+            // Children of a naive search have no parents recorded, they are only reached from here
+            if (child.parents.isEmpty())
+                free(child);
+        }
+        node.children.clear();
+        node.collapsed = true;
+    }
+
+    private void free(MCNode node) {
+        collapse(node);
+        if (node.key != null) {
+            Long key = BoardBits.hash(node.key);
+            if (nodeMap.get(key) == node)
+                nodeMap.remove(key);
+        }
+        liveNodes--;
+        prunedNodes++;
+        pool.push(node);
+    }
+
+    /**
+     * Size of the tree of the last or running search and the heap in use
+     */
+    public String treeStats(MCNode root) {
+        Runtime runtime = Runtime.getRuntime();
+        long heap = (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+        return "simulations " + root.totalSim + "  nodes " + liveNodes
+            + (config.maxNodes > 0 ? "/" + config.maxNodes : "") + "  pruned " + prunedNodes
+            + "  pooled " + pool.size() + "  heap " + heap + "/" + (runtime.maxMemory() >> 20) + " MB";
+    }
+
+    public Game makeMove(Game game, int color, boolean naive) {
+        MCNode root = search(game, color, naive);
         MCNode bestChild = root.getMostWinningChild();
 
         // Console output
@@ -47,7 +280,8 @@ public class MonteCarlo {
 //        int depth = root.getDepth();
 //        System.out.println("Depth: " + depth);
 //        System.out.println();
-        System.out.println(bestChild.wins[color] * 100.0 / bestChild.totalSim);
+        if (config.verbose)
+            System.out.println(bestChild.wins[color] * 100.0 / bestChild.totalSim);
 //
 //        int gameCount = stats.branchingFactors.size() - 1;
 //        if (naive) {
@@ -11,8 +11,11 @@
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import javax.swing.*;
 import javax.swing.Timer;
+import java.io.IOException;
+import java.nio.file.Path;
 
 /**
  * This program is the driver for the game of Othello.<br>
@@ -27,10 +30,9 @@ import javax.swing.Timer;
  */
 
 public class Othello extends JPanel {
-    final static int PLAYER_SIZE = 2;
+    final static int PLAYER_SIZE = Game.PLAYER_SIZE;
 
     private Game game = new Game();     // Game state
-    private Strategy strategy = new Strategy();
     private Timer timer;
     private static int delay;
     private int turn = Game.BLACK;
@@ -38,6 +40,20 @@ public class Othello extends JPanel {
     Player[] players = new Player[PLAYER_SIZE];
     private boolean[] playerDone = new boolean[PLAYER_SIZE];
 
+    // Log file for the games played without the GUI, set with -Dothello.record=file
+    private static final String RECORDFILE = System.getProperty("othello.record");
+    private GameRecord record;      // Moves of the game being played, null when not recording
+
+    private RenderModel model;          // What the GUI shows, updated by refresh after every move
+    private BufferedImage boardImage;   // Background and lines of the board at the current panel size
+
+    // Height of the status line at the top of the panel
+    private static final int STATUS_HEIGHT = 26;
+
+    // Window size, 65 pixels per square plus the frame and the title bar
+    private static final int WINDOW_WIDTH = Game.BOARD_SIZE * 65 + 10;
+    private static final int WINDOW_HEIGHT = Game.BOARD_SIZE * 65 + 37;
+
     /**
      * This constructor sets up the initial game configuration,
      * and starts the timer with a default delay of 1 second.
@@ -53,8 +69,9 @@ public class Othello extends JPanel {
      * @param delay number of milliseconds between player moves
      */
     public Othello(int delay) {
-        players[Game.BLACK] = new Player(strategy, AIType.NaiveMonteCarlo, Game.BLACK);          // The players
-        players[Game.WHITE] = new Player(strategy, AIType.NaiveMonteCarlo, Game.WHITE);
+        // The players, each with its own strategy so that each has its own seed
+        players[Game.BLACK] = new Player(new Strategy(), AIType.NaiveMonteCarlo, Game.BLACK);
+        players[Game.WHITE] = new Player(new Strategy(), AIType.NaiveMonteCarlo, Game.WHITE);
 
         // Initialize the game state
         initGame(game);
@@ -65,7 +82,7 @@ public class Othello extends JPanel {
             setBackground(Color.GREEN);
             timer = new javax.swing.Timer(delay, e -> {
                 playerMove();
-                repaint();
+                refresh();
             });
 
             // Create the Start and Stop buttons
@@ -93,7 +110,7 @@ public class Othello extends JPanel {
                 initGame(game);
                 timer.stop();
                 start.setText(_start);
-                repaint();
+                refresh();
             });
         }
 
@@ -126,7 +143,7 @@ public class Othello extends JPanel {
                     System.out.println("No more undo history.");
                 else{
                     game.board = game.boardHistory.pop();
-                    repaint();
+                    refresh();
                 }
             });
             MouseAdapter mouseAdapter = new MouseAdapter() {
@@ -147,13 +164,13 @@ public class Othello extends JPanel {
                     else {
                         // Update human move
                         game.board[row][column] = turn;
-                        repaint();
+                        refresh();
 
                         // Computer plays
                         do {
                             turn = Game.toggleTurn(turn);
                             playerMove();
-                            repaint();
+                            refresh();
                         } while (!game.endReached() && !game.hasLegalMoves(turn));
                     }
                 }
@@ -166,7 +183,7 @@ public class Othello extends JPanel {
                     game.boardHistory.clear();
                     if (colorList.getSelectedItem().equals(_white)) {
                         playerMove();
-                        repaint();
+                        refresh();
                     }
                     addMouseListener(mouseAdapter);
                 }
@@ -176,7 +193,7 @@ public class Othello extends JPanel {
                     undo.setEnabled(false);
                     initGame(game);
                     removeMouseListener(mouseAdapter);
-                    repaint();
+                    refresh();
                 }
             });
         }
@@ -195,10 +212,25 @@ public class Othello extends JPanel {
             // Play a bunch of games!
 //            MonteCarlo.stats = stats;
 
+            GameRecordWriter recordWriter = null;
+            if (RECORDFILE != null) {
+                try {
+                    recordWriter = new GameRecordWriter(Path.of(RECORDFILE));
+                } catch (IOException e) {
+                    System.out.println("Cannot record games: " + e.getMessage());
+                }
+            }
+
             for (int times = 0; times < -delay; times++) {
 //                stats.addNewList();
 
                 initGame(game);
+                // Every game has its own seed, so a game of the log can be replayed alone
+                long seed = Seeds.derive(Seeds.BASE, times);
+                for (Player player : players)
+                    player.setSeed(Seeds.derive(seed, player.color));
+                if (recordWriter != null)
+                    record = new GameRecord(players[Game.BLACK].aiType, players[Game.WHITE].aiType, seed);
                 boolean done = false;
                 for (int i = 0; i < playerDone.length; i++)
                     playerDone[i] = false;
@@ -218,14 +250,33 @@ public class Othello extends JPanel {
                             //System.out.println("Tied game");
                             ties++;
                         }
+                        if (recordWriter != null) {
+                            record.finish(game);
+                            try {
+                                recordWriter.append(record);
+                            } catch (IOException e) {
+                                System.out.println("Cannot record games: " + e.getMessage());
+                                recordWriter = null;
+                            }
+                            record = null;
+                        }
                     }
                 }
             }
 
+            if (recordWriter != null) {
+                try {
+                    recordWriter.close();
+                } catch (IOException e) {
+                    System.out.println("Cannot record games: " + e.getMessage());
+                }
+            }
+
             long runTime = System.currentTimeMillis() - startTime;
 
             System.out.println("===========================");
             System.out.println("Total number of games = " + -delay);
+            System.out.println("Seed = " + Seeds.BASE);
             System.out.println("White won " + white_won + " times");
             System.out.println("Black won " + black_won + " times");
             System.out.println("Number of tied games = " + ties);
@@ -282,10 +333,31 @@ public class Othello extends JPanel {
      * first, and then Black and White take turns.
      */
     public void playerMove() {
+        int[][] before = record == null ? null : Util.deepCopy(game.board);
         game = players[turn].strategy(game, turn);
+        if (record != null) {
+            int[] move = Game.findMove(before, game.board);
+            if (move != null)
+                record.addMove(move[0], move[1]);
+        }
         turn = Game.toggleTurn(turn);
     }
 
+    /**
+     * Show the current state of the game. The render model is computed once per call, and
+     * only the squares that look different from the last model are repainted.
+     */
+    private void refresh() {
+        RenderModel previous = model;
+        model = new RenderModel(game, turn);
+        int xoff = getWidth() / Game.BOARD_SIZE;
+        int yoff = getHeight() / Game.BOARD_SIZE;
+        for (int[] square : model.changedSquares(previous))
+            repaint((square[1] - 1) * xoff, (square[0] - 1) * yoff, xoff, yoff);
+        if (previous == null || !previous.status.equals(model.status))
+            repaint(0, 0, getWidth(), STATUS_HEIGHT);
+    }
+
     /**
      * Draw the board and the current state of the game.
      *
@@ -293,63 +365,64 @@ public class Othello extends JPanel {
      */
     public void paintComponent(Graphics g) {
 
-        super.paintComponent(g);  // Fill panel with background color
-
         int width = getWidth();
         int height = getHeight();
+        if (width == 0 || height == 0)
+            return;
         int xoff = width / Game.BOARD_SIZE;
         int yoff = height / Game.BOARD_SIZE;
-
-        int bCount = 0;
-        int wCount = 0;
-
-        // Draw the lines on the board
-        g.setColor(Color.BLACK);
-        for (int i = 1; i <= Game.BOARD_SIZE; i++) {
-            g.drawLine(i * xoff, 0, i * xoff, height);
-            g.drawLine(0, i * yoff, width, i * yoff);
+        int disc = Math.min(xoff, yoff) - 14;
+        if (model == null)
+            model = new RenderModel(game, turn);
+
+        // The background and the lines only change with the size of the panel
+        if (boardImage == null || boardImage.getWidth() != width || boardImage.getHeight() != height) {
+            // An image compatible with the screen can be kept in video memory
+            GraphicsConfiguration config = getGraphicsConfiguration();
+            boardImage = config != null ? config.createCompatibleImage(width, height)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics b = boardImage.getGraphics();
+            b.setColor(getBackground());
+            b.fillRect(0, 0, width, height);
+            b.setColor(Color.BLACK);
+            for (int i = 1; i <= Game.BOARD_SIZE; i++) {
+                b.drawLine(i * xoff, 0, i * xoff, height);
+                b.drawLine(0, i * yoff, width, i * yoff);
+            }
+            b.dispose();
         }
+        // The image covers the whole panel, so the background needs no filling
+        g.drawImage(boardImage, 0, 0, null);
 
-        // Draw discs on the board and show the legal moves
+        // Draw discs and legal moves of the squares in the area being repainted
+        Rectangle clip = g.getClipBounds();
         for (int i = 1; i <= Game.BOARD_SIZE; i++) {
             for (int j = 1; j <= Game.BOARD_SIZE; j++) {
-                // Draw the discs
-                if (game.board[i][j] == Game.BLACK) {
+                int x = (j - 1) * xoff;
+                int y = (i - 1) * yoff;
+                if (clip != null && !clip.intersects(x, y, xoff, yoff))
+                    continue;
+                if (model.cells[i][j] == Game.BLACK) {
                     g.setColor(Color.BLACK);
-                    g.fillOval((j * yoff) - yoff + 7, (i * xoff) - xoff + 7, 50, 50);
-                    bCount++;
-                } else if (game.board[i][j] == Game.WHITE) {
+                    g.fillOval(x + 7, y + 7, disc, disc);
+                } else if (model.cells[i][j] == Game.WHITE) {
                     g.setColor(Color.WHITE);
-                    g.fillOval((j * yoff) - yoff + 7, (i * xoff) - xoff + 7, 50, 50);
-                    wCount++;
+                    g.fillOval(x + 7, y + 7, disc, disc);
                 }
                 // Show the legal moves for the current player
-                if (game.legalMove(i, j, turn, false)) {
-                    g.setColor(turn == Game.BLACK ? Color.BLACK : Color.WHITE);
-                    g.fillOval((j * yoff + 29) - yoff, (i * xoff + 29) - xoff, 6, 6);
+                if (model.isLegal(i, j)) {
+                    g.setColor(model.turn == Game.BLACK ? Color.BLACK : Color.WHITE);
+                    g.fillOval(x + disc / 2 + 4, y + disc / 2 + 4, 6, 6);
                 }
-                if (game.recentMove != null && i == game.recentMove[0] && j == game.recentMove[1]) {
+                if (model.isRecentMove(i, j)) {
                     g.setColor(Color.RED);
-                    g.fillRect((j * yoff) - yoff + 7, (i * xoff) - xoff + 7, 10, 10);
+                    g.fillRect(x + 7, y + 7, 10, 10);
                 }
             }
         }
 
         g.setColor(Color.RED);
-        if (game.endReached()) {
-            if (wCount > bCount)
-                g.drawString("White won with " + wCount + " discs.", 10, 20);
-            else if (bCount > wCount)
-                g.drawString("Black won with " + bCount + " discs.", 10, 20);
-            else g.drawString("Tied game", 10, 20);
-        } else {
-            if (wCount > bCount)
-                g.drawString("White is winning with " + wCount + " discs", 10, 20);
-            else if (bCount > wCount)
-                g.drawString("Black is winning with " + bCount + " discs", 10, 20);
-            else g.drawString("Currently tied", 10, 20);
-        }
-
+        g.drawString(model.status, 10, 20);
     }
 
     /**
@@ -365,6 +438,7 @@ public class Othello extends JPanel {
             System.out.println("Usage: java Othello delayTime");
             System.exit(0);
         }
+        Warmup.run(System.out);
 
         if (args.length == 1) {
             try {
@@ -377,7 +451,7 @@ public class Othello extends JPanel {
             if (delay >= 0) {
                 JFrame window = new JFrame("Othello Game");
                 window.setContentPane(content);
-                window.setSize(530, 557);
+                window.setSize(WINDOW_WIDTH, WINDOW_HEIGHT);
                 window.setLocation(100, 100);
                 window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
                 window.setVisible(true);
@@ -386,7 +460,7 @@ public class Othello extends JPanel {
             content = new Othello();
             JFrame window = new JFrame("Othello Game");
             window.setContentPane(content);
-            window.setSize(530, 557);
+            window.setSize(WINDOW_WIDTH, WINDOW_HEIGHT);
             window.setLocation(100, 100);
             window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             window.setVisible(true);
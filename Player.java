@@ -9,6 +9,26 @@ public class Player {
         this.color = color;
     }
 
+    /**
+     * A player with its own tuning constants
+     *
+     * @param aiType the method used to choose moves
+     * @param color  the color (Black or White) of the player
+     * @param config weights, search depth and Monte Carlo limits of the player
+     */
+    public Player(AIType aiType, int color, EngineConfig config) {
+        this(new Strategy(config), aiType, color);
+    }
+
+    /**
+     * Restart the random choices of this player from a seed
+     *
+     * @param seed the seed, the same seed gives the same moves
+     */
+    public void setSeed(long seed) {
+        strategy.setSeed(seed);
+    }
+
     /**
      *  This method calls the appropriate strategy.
      *
@@ -0,0 +1,40 @@
+/**
+ * Evaluator built from the point table and mobility terms of the minimax search.
+ * The score of a position is the point difference of the disks on the board plus
+ * the weighted difference of legal moves, mapped to a probability by a logistic curve.
+ */
+public class PointEvaluator implements Evaluator {
+    // Value of one more legal move, in point table units
+    private final double mobilityWeight;
+
+    // Score difference at which the win probability is about 73%
+    private final double scale;
+
+    public PointEvaluator() {
+        this(3, 25);
+    }
+
+    /**
+     * @param mobilityWeight value of one more legal move, in point table units
+     * @param scale          score difference that moves the log-odds of a win by one
+     */
+    public PointEvaluator(double mobilityWeight, double scale) {
+        this.mobilityWeight = mobilityWeight;
+        this.scale = scale;
+    }
+
+    public double winProbability(Game game, int turn, int color) {
+        int opponent = Game.toggleTurn(color);
+        int score = 0;
+        for (int i = 1; i <= Game.BOARD_SIZE; i++) {
+            for (int j = 1; j <= Game.BOARD_SIZE; j++) {
+                if (game.board[i][j] == color)
+                    score += Strategy.pointTable[i][j];
+                else if (game.board[i][j] == opponent)
+                    score -= Strategy.pointTable[i][j];
+            }
+        }
+        int mobility = game.getLegalMoves(color).size() - game.getLegalMoves(opponent).size();
+        return 1 / (1 + Math.exp(-(score + mobilityWeight * mobility) / scale));
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Prior from the point table of Strategy, mapped to [0, 1] by a logistic curve. The squares
+ * next to a corner are only bad while the corner is empty, once it is taken they count as
+ * common squares.
+ */
+public class PointPrior implements PriorProvider {
+    // Point difference that moves the log-odds of the prior by one
+    private final double scale;
+
+    public PointPrior() {
+        this(5);
+    }
+
+    /**
+     * @param scale point difference that moves the log-odds of the prior by one
+     */
+    public PointPrior(double scale) {
+        this.scale = scale;
+    }
+
+    public double prior(Game game, int row, int col, int color) {
+        int points = Strategy.pointTable[row][col];
+        if (points < 0) {
+            // Nearest corner of the square
+            int cornerRow = row <= Game.BOARD_SIZE / 2 ? 1 : Game.BOARD_SIZE;
+            int cornerCol = col <= Game.BOARD_SIZE / 2 ? 1 : Game.BOARD_SIZE;
+            if (game.board[cornerRow][cornerCol] != Game.EMPTY)
+                points = Strategy.COMMON;
+        }
+        return 1 / (1 + Math.exp(-points / scale));
+    }
+}
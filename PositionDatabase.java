@@ -0,0 +1,313 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/**
+ * On-disk index of every position of recorded games, with the results of the games that
+ * reached it. Positions are canonicalized under the 8 board symmetries and keyed by their
+ * 64-bit hash with the side to move. The index is an open-addressing hash table in a
+ * memory-mapped file, so a lookup touches a few slots of the file and nothing is loaded
+ * into the heap. The table doubles in a new file when it gets too full.
+ * <p>
+ * Logs are indexed incrementally, the offset reached in every log is kept in a
+ * properties file next to the index, and adding a log again only indexes new games.
+ * <p>
+ * Run as one of the following:<br>
+ * java PositionDatabase index add log...          (index new games of the logs)<br>
+ * java PositionDatabase index query BOARD SIDE    (statistics of a position, see Engine for the notation)
+ */
+public class PositionDatabase implements AutoCloseable {
+    private static final int MAGIC = 0x4f545044;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final int INITIAL_SLOTS = 1 << 16;
+
+    // A mapped buffer holds at most 2 GB
+    private static final int MAX_SLOTS = 1 << 25;
+
+    // Distinguishes the same disks with a different side to move
+    private static final long WHITE_TO_MOVE = 0x6a09e667f3bcc909L;
+
+    // Slot layout: key, occurrences, black wins, white wins, unused, sum of disc differences
+    private static final int KEY = 0;
+    private static final int OCCURRENCES = 8;
+    private static final int BLACK_WINS = 12;
+    private static final int WHITE_WINS = 16;
+    private static final int DIFF_SUM = 24;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int slots;
+    private long count;
+
+    /**
+     * Statistics of one position
+     */
+    public static class Stats {
+        public int occurrences;
+        public int blackWins;
+        public int whiteWins;
+        public long discDifferenceSum;
+
+        /**
+         * Average final black disks minus white disks of the games through the position
+         */
+        public double averageDiscDifference() {
+            return discDifferenceSum * 1.0 / occurrences;
+        }
+
+        public String toString() {
+            return occurrences + " games, black won " + blackWins + ", white won " + whiteWins
+                + ", average disc difference " + String.format("%.2f", averageDiscDifference());
+        }
+    }
+
+    /**
+     * Open an index, creating an empty one if the file does not exist
+     *
+     * @param path index file
+     * @throws IOException if the file cannot be opened or is not a position index
+     */
+    public PositionDatabase(Path path) throws IOException {
+        this.path = path;
+        if (!Files.exists(path) || Files.size(path) == 0)
+            create(path, INITIAL_SLOTS).close();
+        open();
+    }
+
+    /**
+     * Statistics of a position
+     *
+     * @param game the state of the game
+     * @param turn the player to move
+     * @return the statistics, null if the position was never indexed
+     */
+    public Stats lookup(Game game, int turn) {
+        int slot = find(key(game, turn));
+        if (slot < 0)
+            return null;
+        int offset = offset(slot);
+        Stats stats = new Stats();
+        stats.occurrences = map.getInt(offset + OCCURRENCES);
+        stats.blackWins = map.getInt(offset + BLACK_WINS);
+        stats.whiteWins = map.getInt(offset + WHITE_WINS);
+        stats.discDifferenceSum = map.getLong(offset + DIFF_SUM);
+        return stats;
+    }
+
+    /**
+     * Index all games of a log that were not indexed before
+     *
+     * @param log game record log
+     * @return number of games indexed
+     * @throws IOException if the log or the index cannot be accessed
+     */
+    public int addLog(Path log) throws IOException {
+        Properties offsets = readOffsets();
+        String name = log.toAbsolutePath().normalize().toString();
+        long offset = Long.parseLong(offsets.getProperty(name, "0"));
+        int games = 0;
+        try (GameRecordReader reader = new GameRecordReader(log, offset)) {
+            GameRecord record;
+            while ((record = reader.next()) != null) {
+                add(record);
+                games++;
+            }
+            offsets.setProperty(name, Long.toString(reader.position()));
+        }
+        writeHeader();
+        map.force();
+        // Replaced in one step, so a crash leaves the old offsets or the new ones and never
+        // a cut off file that makes the next run index the logs again from the start
+        Path tmp = offsetsPath().resolveSibling(offsetsPath().getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp)) {
+            offsets.store(out, "Indexed bytes of every game record log");
+        }
+        Files.move(tmp, offsetsPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return games;
+    }
+
+    /**
+     * Add every position of a game to the index
+     *
+     * @param record the game
+     */
+    public void add(GameRecord record) {
+        // The player after the last move, who is to move in the final position
+        int[] next = {Game.BLACK};
+        Game end = record.replay((game, turn) -> {
+            add(game, turn, record);
+            next[0] = Game.toggleTurn(turn);
+        });
+        // The visitor only sees the positions before the moves
+        add(end, next[0], record);
+    }
+
+    private void add(Game game, int turn, GameRecord record) {
+        long key = key(game, turn);
+        int slot = find(key);
+        if (slot < 0) {
+            if (count + 1 > slots * 3L / 4) {
+                grow();
+                slot = find(key);
+            }
+            slot = -slot - 1;
+            map.putLong(offset(slot) + KEY, key);
+            count++;
+        }
+        int offset = offset(slot);
+        map.putInt(offset + OCCURRENCES, map.getInt(offset + OCCURRENCES) + 1);
+        if (record.winner == Game.BLACK)
+            map.putInt(offset + BLACK_WINS, map.getInt(offset + BLACK_WINS) + 1);
+        else if (record.winner == Game.WHITE)
+            map.putInt(offset + WHITE_WINS, map.getInt(offset + WHITE_WINS) + 1);
+        map.putLong(offset + DIFF_SUM, map.getLong(offset + DIFF_SUM) + record.discDifference);
+    }
+
+    /**
+     * Number of distinct positions in the index
+     */
+    public long size() {
+        return count;
+    }
+
+    public void close() throws IOException {
+        writeHeader();
+        map.force();
+        channel.close();
+    }
+
+    /**
+     * Slot of a key, or -(free slot + 1) where the key would go
+     */
+    private int find(long key) {
+        int mask = slots - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (true) {
+            long k = map.getLong(offset(slot) + KEY);
+            if (k == key)
+                return slot;
+            if (k == 0)
+                return -slot - 1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private long key(Game game, int turn) {
+        long key = BoardBits.hash(BoardBits.canonicalize(BoardBits.toBits(game.board, Game.BLACK),
+            BoardBits.toBits(game.board, Game.WHITE)));
+        if (turn == Game.WHITE)
+            key ^= WHITE_TO_MOVE;
+        // 0 marks an empty slot
+        return key == 0 ? 1 : key;
+    }
+
+    /**
+     * Move all entries to a table of twice the size in a new file, then replace the index with it
+     */
+    private void grow() {
+        if (slots >= MAX_SLOTS)
+            throw new IllegalStateException("Position index is full");
+        try {
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            PositionDatabase bigger = create(tmp, slots * 2);
+            for (int slot = 0; slot < slots; slot++) {
+                int from = offset(slot);
+                long key = map.getLong(from + KEY);
+                if (key == 0)
+                    continue;
+                int to = bigger.offset(-bigger.find(key) - 1);
+                for (int i = 0; i < SLOT_SIZE; i += 8)
+                    bigger.map.putLong(to + i, map.getLong(from + i));
+            }
+            bigger.count = count;
+            bigger.close();
+            channel.close();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot grow position index", e);
+        }
+    }
+
+    private static PositionDatabase create(Path path, int slots) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.truncate(0);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * SLOT_SIZE);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, slots);
+            header.putLong(12, 0);
+            header.put(20, (byte) Game.BOARD_SIZE);
+            header.force();
+        }
+        return new PositionDatabase(path);
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION)
+            throw new IOException("Not a position index");
+        // Indexes written before other board sizes existed have 0 there
+        int boardSize = map.get(20) == 0 ? 8 : map.get(20);
+        if (boardSize != Game.BOARD_SIZE)
+            throw new IOException("Position index is for " + boardSize + " x " + boardSize + " boards");
+        slots = map.getInt(8);
+        count = map.getLong(12);
+    }
+
+    private void writeHeader() {
+        map.putLong(12, count);
+    }
+
+    private int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private Path offsetsPath() {
+        return path.resolveSibling(path.getFileName() + ".logs");
+    }
+
+    private Properties readOffsets() throws IOException {
+        Properties offsets = new Properties();
+        if (Files.exists(offsetsPath())) {
+            try (Reader in = Files.newBufferedReader(offsetsPath())) {
+                offsets.load(in);
+            }
+        }
+        return offsets;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || !(args[1].equals("add") || args[1].equals("query") && args.length == 4)) {
+            System.out.println("Usage: java PositionDatabase index add log...");
+            System.out.println("       java PositionDatabase index query BOARD SIDE");
+            System.exit(0);
+        }
+        try (PositionDatabase db = new PositionDatabase(Path.of(args[0]))) {
+            if (args[1].equals("add")) {
+                for (int i = 2; i < args.length; i++)
+                    System.out.println(args[i] + ": indexed " + db.addLog(Path.of(args[i])) + " new games");
+                System.out.println(db.size() + " positions in the index");
+            } else {
+                Game game = new Game();
+                int turn = Engine.parsePosition(game, args[2], args[3]);
+                long start = System.nanoTime();
+                Stats stats = db.lookup(game, turn);
+                long micros = (System.nanoTime() - start) / 1000;
+                System.out.println((stats == null ? "Position not found" : stats.toString()) + " (" + micros + " us)");
+            }
+        }
+    }
+}
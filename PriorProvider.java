@@ -0,0 +1,16 @@
+/**
+ * Heuristic score of a move before it is searched, used by the Monte Carlo search to try
+ * promising moves first, see EngineConfig.priorWeight
+ */
+public interface PriorProvider {
+    /**
+     * Score a legal move. Called once for each move when a tree node is expanded.
+     *
+     * @param game  the position before the move
+     * @param row   row of the move in the game matrix
+     * @param col   column of the move in the game matrix
+     * @param color the player making the move
+     * @return how promising the move is, from 0 for a bad move to 1 for a good one
+     */
+    double prior(Game game, int row, int col, int color);
+}
@@ -0,0 +1,137 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Parameters of ProbCut selective search. For a game phase and a search depth, the value of
+ * a deep search is predicted from a shallow one as slope * shallow + intercept, with a normal
+ * error of standard deviation sigma. A move whose deep value falls outside the alpha-beta
+ * window with a probability higher than the phase threshold allows is cut after the shallow
+ * search alone. Several depths can have a model each (Multi-ProbCut).
+ * <p>
+ * Models are fitted with ProbCutFit and stored in a text file, one entry per line:
+ * <pre>
+ * threshold phase t
+ * model phase depth shallowDepth slope intercept sigma
+ * </pre>
+ */
+public class ProbCut {
+    /**
+     * Game phases, by number of disks on the board
+     */
+    public static final int PHASES = 4;
+
+    /**
+     * Deepest search depth that can have a model
+     */
+    public static final int DEPTHS = 32;
+
+    // Threshold used for phases without a threshold line
+    private static final double DEFAULT_THRESHOLD = 1.5;
+
+    final double[] threshold = new double[PHASES];
+    final int[][] shallow = new int[PHASES][DEPTHS];
+    final double[][] slope = new double[PHASES][DEPTHS];
+    final double[][] intercept = new double[PHASES][DEPTHS];
+    final double[][] sigma = new double[PHASES][DEPTHS];
+
+    public ProbCut() {
+        for (int p = 0; p < PHASES; p++)
+            threshold[p] = DEFAULT_THRESHOLD;
+    }
+
+    /**
+     * Game phase of a position
+     *
+     * @param game the state of the game
+     * @return phase in [0, PHASES)
+     */
+    public static int phase(Game game) {
+        int[] diskCount = game.getDiskCount();
+        int disks = diskCount[Game.BLACK] + diskCount[Game.WHITE];
+        int squares = Game.BOARD_SIZE * Game.BOARD_SIZE;
+        return Math.min(PHASES - 1, (disks - 4) * PHASES / (squares - 3));
+    }
+
+    /**
+     * Whether a cut can be tried at this phase and depth
+     */
+    public boolean has(int phase, int depth) {
+        return depth < DEPTHS && sigma[phase][depth] > 0;
+    }
+
+    /**
+     * Set the cut threshold of a phase, in standard deviations
+     */
+    public void setThreshold(int phase, double t) {
+        threshold[phase] = t;
+    }
+
+    /**
+     * Set the model of a phase and depth
+     *
+     * @throws IllegalArgumentException if the shallow depth is not between 1 and depth - 1
+     */
+    public void setModel(int phase, int depth, int shallowDepth, double a, double b, double s) {
+        // A shallow search of the full depth would call itself forever
+        if (shallowDepth < 1 || shallowDepth >= depth)
+            throw new IllegalArgumentException("shallow depth " + shallowDepth + " of depth " + depth);
+        shallow[phase][depth] = shallowDepth;
+        slope[phase][depth] = a;
+        intercept[phase][depth] = b;
+        sigma[phase][depth] = s;
+    }
+
+    /**
+     * Read models and thresholds from a file written by {@link #save(String)}
+     *
+     * @param path file name
+     * @return the parameters
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static ProbCut load(String path) throws IOException {
+        ProbCut probCut = new ProbCut();
+        try (BufferedReader in = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] f = line.split("\\s+");
+                try {
+                    if (f[0].equals("threshold"))
+                        probCut.setThreshold(Integer.parseInt(f[1]), Double.parseDouble(f[2]));
+                    else if (f[0].equals("model"))
+                        probCut.setModel(Integer.parseInt(f[1]), Integer.parseInt(f[2]), Integer.parseInt(f[3]),
+                            Double.parseDouble(f[4]), Double.parseDouble(f[5]), Double.parseDouble(f[6]));
+                    else
+                        throw new IOException("Unknown ProbCut entry: " + line);
+                } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Malformed ProbCut entry: " + line, e);
+                }
+            }
+        }
+        return probCut;
+    }
+
+    /**
+     * Write models and thresholds to a file
+     *
+     * @param path file name
+     * @throws IOException if the file cannot be written
+     */
+    public void save(String path) throws IOException {
+        try (PrintWriter out = new PrintWriter(path)) {
+            out.println("# threshold phase t");
+            for (int p = 0; p < PHASES; p++)
+                out.println("threshold " + p + " " + threshold[p]);
+            out.println("# model phase depth shallowDepth slope intercept sigma");
+            for (int p = 0; p < PHASES; p++)
+                for (int d = 0; d < DEPTHS; d++)
+                    if (has(p, d))
+                        out.println("model " + p + " " + d + " " + shallow[p][d] + " " + slope[p][d] + " "
+                            + intercept[p][d] + " " + sigma[p][d]);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * Fits the ProbCut model of the minimax search from self-play positions.
+ * For every position and every deep depth, the position is searched both to the deep
+ * depth and to a shallow depth two plies less, and a line is fitted through the pairs
+ * of values of each game phase. The residual standard deviation becomes sigma.
+ * <p>
+ * Run as: java ProbCutFit games maxDepth outputFile [seed]
+ */
+public class ProbCutFit {
+    // Deep depths start here, the shallow search needs at least one ply
+    private static final int MINDEPTH = 3;
+
+    // Shallow searches keep the parity of the deep one, the evaluation differs a lot between
+    // positions after the player's own move and after the opponent's move
+    private static final int REDUCTION = 2;
+
+    // Buckets with fewer samples get no model
+    private static final int MINSAMPLES = 30;
+
+    // Chance of a random move in the self-play games, for a wider spread of positions
+    private static final double RANDOMMOVE = 0.3;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || args.length > 4) {
+            System.out.println("Usage: java ProbCutFit games maxDepth outputFile [seed]");
+            System.exit(0);
+        }
+        int games = Integer.parseInt(args[0]);
+        int maxDepth = Integer.parseInt(args[1]);
+        if (maxDepth < MINDEPTH) {
+            System.out.println("maxDepth must be at least " + MINDEPTH);
+            System.exit(0);
+        }
+        long seed = args.length == 4 ? Long.parseLong(args[3]) : Seeds.BASE;
+        System.out.println("Seed " + seed);
+        SplittableRandom rand = new SplittableRandom(seed);
+
+        Strategy strategy = new Strategy();
+        AlphaBeta[] searches = new AlphaBeta[maxDepth + 1];
+        for (int d = 1; d <= maxDepth; d++)
+            searches[d] = new AlphaBeta(strategy, new TranspositionTable(18));
+
+        // Regression sums per phase and deep depth: n, x, y, xx, xy, yy
+        double[][][] sums = new double[ProbCut.PHASES][maxDepth + 1][6];
+        for (int g = 0; g < games; g++) {
+            Game game = new Game();
+            game.init();
+            int turn = Game.BLACK;
+            while (!game.endReached()) {
+                ArrayList<Move> moves = new ArrayList<>();
+                for (int i = 1; i <= Game.BOARD_SIZE; i++)
+                    for (int j = 1; j <= Game.BOARD_SIZE; j++) {
+                        Move move = game.pointMove(i, j, turn, false, Strategy.pointTable);
+                        if (move.legal)
+                            moves.add(move);
+                    }
+                if (!moves.isEmpty()) {
+                    int phase = ProbCut.phase(game);
+                    for (int d = MINDEPTH; d <= maxDepth; d++) {
+                        double x = searches[d - REDUCTION].evaluate(game, turn, d - REDUCTION);
+                        double y = searches[d].evaluate(game, turn, d);
+                        double[] s = sums[phase][d];
+                        s[0]++;
+                        s[1] += x;
+                        s[2] += y;
+                        s[3] += x * x;
+                        s[4] += x * y;
+                        s[5] += y * y;
+                    }
+                    Move move = rand.nextDouble() < RANDOMMOVE ? moves.get(rand.nextInt(moves.size()))
+                        : searches[2].search(game, turn, 2);
+                    strategy.makeMove(game, false, turn, move);
+                }
+                turn = Game.toggleTurn(turn);
+            }
+            System.out.println("Game " + (g + 1) + " of " + games + " done");
+        }
+
+        ProbCut probCut = new ProbCut();
+        for (int p = 0; p < ProbCut.PHASES; p++) {
+            for (int d = MINDEPTH; d <= maxDepth && d < ProbCut.DEPTHS; d++) {
+                double[] s = sums[p][d];
+                double n = s[0];
+                double denominator = n * s[3] - s[1] * s[1];
+                if (n < MINSAMPLES || denominator == 0)
+                    continue;
+                double a = (n * s[4] - s[1] * s[2]) / denominator;
+                double b = (s[2] - a * s[1]) / n;
+                double sse = s[5] - 2 * a * s[4] - 2 * b * s[2] + a * a * s[3] + 2 * a * b * s[1] + n * b * b;
+                double sigma = Math.sqrt(Math.max(sse, 0) / (n - 2));
+                if (a <= 0 || sigma == 0)
+                    continue;
+                probCut.setModel(p, d, d - REDUCTION, a, b, sigma);
+                System.out.println("Phase " + p + " depth " + d + ": deep = " + a + " * shallow + " + b
+                    + ", sigma " + sigma + " (" + (int) n + " positions)");
+            }
+        }
+        probCut.save(args[2]);
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+
+/**
+ * What the GUI shows of a position, computed once per move so that painting does not
+ * search the board: the disks, the legal moves of the player to move, the disk counts,
+ * the status line and the last move.
+ */
+public class RenderModel {
+    /**
+     * Disk on every square, indexed like the game matrix
+     */
+    public final int[][] cells;
+
+    /**
+     * Legal moves of the player to move, see BoardBits
+     */
+    public final long[] legal;
+
+    public final int turn;
+    public final int[] diskCount;
+    public final String status;
+
+    /**
+     * Row and column of the last move, null before the first move
+     */
+    public final int[] recentMove;
+
+    /**
+     * @param game the position to show
+     * @param turn the player to move
+     */
+    public RenderModel(Game game, int turn) {
+        cells = Util.deepCopy(game.board);
+        legal = game.moveBits(turn);
+        this.turn = turn;
+        diskCount = game.getDiskCount();
+        recentMove = game.recentMove == null ? null : game.recentMove.clone();
+        status = status(BoardBits.isEmpty(legal) && game.endReached(), diskCount);
+    }
+
+    private static String status(boolean over, int[] diskCount) {
+        int black = diskCount[Game.BLACK];
+        int white = diskCount[Game.WHITE];
+        if (over) {
+            if (white > black)
+                return "White won with " + white + " discs.";
+            else if (black > white)
+                return "Black won with " + black + " discs.";
+            return "Tied game";
+        }
+        if (white > black)
+            return "White is winning with " + white + " discs";
+        else if (black > white)
+            return "Black is winning with " + black + " discs";
+        return "Currently tied";
+    }
+
+    public boolean isLegal(int row, int col) {
+        return BoardBits.has(legal, BoardBits.square(row, col));
+    }
+
+    public boolean isRecentMove(int row, int col) {
+        return recentMove != null && recentMove[0] == row && recentMove[1] == col;
+    }
+
+    /**
+     * Squares that look different in this model than in another one
+     *
+     * @param previous the model shown before, may be null
+     * @return row and column of every changed square, all squares if there is no previous model
+     */
+    public ArrayList<int[]> changedSquares(RenderModel previous) {
+        ArrayList<int[]> changed = new ArrayList<>();
+        for (int i = 1; i <= Game.BOARD_SIZE; i++) {
+            for (int j = 1; j <= Game.BOARD_SIZE; j++) {
+                // The hint dots take the color of the player to move
+                boolean same = previous != null && previous.cells[i][j] == cells[i][j]
+                    && previous.isLegal(i, j) == isLegal(i, j) && (!isLegal(i, j) || previous.turn == turn)
+                    && previous.isRecentMove(i, j) == isRecentMove(i, j);
+                if (!same)
+                    changed.add(new int[]{i, j});
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Batch kernel that handles one board after the other, used when the Vector API is not available
+ */
+public class ScalarBatchKernel implements BatchKernel {
+    public void legalMoves(long[] own, long[] opp, long[] moves, int n) {
+        for (int i = 0; i < n; i++)
+            moves[i] = BitBoard.legalMoves(own[i], opp[i]);
+    }
+
+    public void play(long[] own, long[] opp, long[] move, int n) {
+        for (int i = 0; i < n; i++) {
+            if (move[i] == 0)
+                continue;
+            long flips = BitBoard.flips(own[i], opp[i], Long.numberOfTrailingZeros(move[i]));
+            own[i] |= move[i] | flips;
+            opp[i] &= ~flips;
+        }
+    }
+}
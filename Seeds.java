@@ -0,0 +1,33 @@
+import java.util.SplittableRandom;
+
+/**
+ * Source of the random seeds of a run. All randomness of the engines comes from
+ * SplittableRandom streams whose seeds are derived from one base seed, so a run with
+ * the same base seed, a single thread and a fixed number of simulations per move
+ * plays the same games again. Games played in parallel get their seeds from their game
+ * number and not from the thread that plays them, so each game can be replayed alone.
+ * <p>
+ * The base seed is set with -Dothello.seed=N, otherwise it is drawn at startup. The
+ * programs print it so that a run can be repeated.
+ */
+public class Seeds {
+    /**
+     * Base seed of this run
+     */
+    public static final long BASE = Long.getLong("othello.seed", new SplittableRandom().nextLong());
+
+    /**
+     * Seed of one stream derived from another seed, for example the seed of a game from
+     * the base seed and the game number
+     *
+     * @param seed   the seed to derive from
+     * @param stream number of the stream
+     * @return the seed of the stream
+     */
+    public static long derive(long seed, long stream) {
+        long z = seed + (stream + 1) * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
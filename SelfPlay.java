@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates training data from Monte Carlo self-play games on all cores.
+ * For every position of every game it stores the disks, the side to move, the visits of
+ * every root move and the win rate of the root, and once the game is over its winner.
+ * <p>
+ * The data is columnar, one file per field in the output directory, each holding one
+ * fixed-size row per position:<br>
+ * black.bin, white.bin  (long bitboards of BitBoard)<br>
+ * turn.bin              (byte, player to move)<br>
+ * visits.bin            (64 ints, simulations of the move at every square, 0 if not a root move)<br>
+ * winrate.bin           (float, share of simulations won by the player to move)<br>
+ * result.bin            (byte, winner of the game or Game.EMPTY for a tie)<br>
+ * game.bin              (int, number of the game)<br>
+ * Games are written whole, and progress.properties records how many games and positions
+ * are complete. A restarted run cuts the columns back to that point and plays the games
+ * still missing. Root moves that lead to the same position up to symmetry are merged by
+ * the search, their visits go to one of them.
+ * <p>
+ * The seed of the run is kept in progress.properties as well, and every game is seeded
+ * from it and its number, so a restarted run continues with the same seed.
+ * <p>
+ * Run as: java SelfPlay outputDir games [threads] [millisPerMove]
+ */
+public class SelfPlay {
+    private static final String[] COLUMNS = {"black", "white", "turn", "visits", "winrate", "result", "game"};
+    private static final int[] WIDTHS = {8, 8, 1, 64 * 4, 4, 1, 4};
+    private static final int SQUARES = 64;
+
+    private final Path dir;
+    private final EngineConfig config = new EngineConfig();
+    private final FileChannel[] columns = new FileChannel[COLUMNS.length];
+    private long completedGames;
+    private long positions;
+    private final long seed;
+
+    /**
+     * One position of a game in progress
+     */
+    private static class Row {
+        long black;
+        long white;
+        int turn;
+        int[] visits = new int[SQUARES];
+        float winRate;
+    }
+
+    /**
+     * Open the output directory, discarding any data past the last complete game
+     *
+     * @param dir output directory
+     * @throws IOException if the directory cannot be written
+     */
+    public SelfPlay(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        Properties progress = new Properties();
+        if (Files.exists(progressPath())) {
+            try (Reader in = Files.newBufferedReader(progressPath())) {
+                progress.load(in);
+            }
+        }
+        completedGames = Long.parseLong(progress.getProperty("games", "0"));
+        positions = Long.parseLong(progress.getProperty("positions", "0"));
+        seed = Long.parseLong(progress.getProperty("seed", Long.toString(Seeds.BASE)));
+        for (int c = 0; c < COLUMNS.length; c++) {
+            columns[c] = FileChannel.open(dir.resolve(COLUMNS[c] + ".bin"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+            columns[c].truncate(positions * WIDTHS[c]);
+            columns[c].position(positions * WIDTHS[c]);
+        }
+    }
+
+    /**
+     * Play games until the directory holds the requested number
+     *
+     * @param games   total number of games wanted
+     * @param threads number of games played at the same time
+     * @throws IOException if writing fails
+     */
+    public void run(int games, int threads) throws IOException, InterruptedException {
+        AtomicInteger next = new AtomicInteger((int) completedGames);
+        IOException[] failure = new IOException[1];
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                MonteCarlo monteCarlo = new MonteCarlo(config);
+                int g;
+                while ((g = next.getAndIncrement()) < games) {
+                    monteCarlo.setSeed(Seeds.derive(seed, g));
+                    try {
+                        playGame(monteCarlo);
+                    } catch (IOException e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                        return;
+                    }
+                }
+            }, "self-play-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers)
+            worker.join();
+        if (failure[0] != null)
+            throw failure[0];
+    }
+
+    private void playGame(MonteCarlo monteCarlo) throws IOException {
+        ArrayList<Row> rows = new ArrayList<>();
+        Game game = new Game();
+        game.init();
+        int turn = Game.BLACK;
+        while (!game.endReached()) {
+            if (game.hasLegalMoves(turn)) {
+                MCNode root = monteCarlo.search(game, turn, false);
+                Row row = new Row();
+                row.black = BitBoard.toBits(game.board, Game.BLACK);
+                row.white = BitBoard.toBits(game.board, Game.WHITE);
+                row.turn = turn;
+                row.winRate = (float) (root.wins[turn] * 1.0 / root.totalSim);
+                for (MCNode child : root.children) {
+                    int[] move = child.game.recentMove;
+                    row.visits[BitBoard.square(move[0], move[1])] = child.totalSim;
+                }
+                rows.add(row);
+                game = root.getMostWinningChild().game;
+            }
+            turn = Game.toggleTurn(turn);
+        }
+        commit(rows, game.getWinner());
+    }
+
+    /**
+     * Append the rows of a finished game to the columns and record the progress
+     */
+    private synchronized void commit(ArrayList<Row> rows, int winner) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[COLUMNS.length];
+        for (int c = 0; c < COLUMNS.length; c++)
+            buffers[c] = ByteBuffer.allocate(rows.size() * WIDTHS[c]);
+        for (Row row : rows) {
+            buffers[0].putLong(row.black);
+            buffers[1].putLong(row.white);
+            buffers[2].put((byte) row.turn);
+            for (int v : row.visits)
+                buffers[3].putInt(v);
+            buffers[4].putFloat(row.winRate);
+            buffers[5].put((byte) winner);
+            buffers[6].putInt((int) completedGames);
+        }
+        for (int c = 0; c < COLUMNS.length; c++) {
+            buffers[c].flip();
+            while (buffers[c].hasRemaining())
+                columns[c].write(buffers[c]);
+        }
+        completedGames++;
+        positions += rows.size();
+
+        Properties progress = new Properties();
+        progress.setProperty("games", Long.toString(completedGames));
+        progress.setProperty("positions", Long.toString(positions));
+        progress.setProperty("seed", Long.toString(seed));
+        Path tmp = dir.resolve("progress.tmp");
+        try (Writer out = Files.newBufferedWriter(tmp)) {
+            progress.store(out, "Complete games and positions in the columns");
+        }
+        Files.move(tmp, progressPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("Game " + completedGames + " done, " + positions + " positions");
+    }
+
+    public void close() throws IOException {
+        for (FileChannel column : columns)
+            column.close();
+    }
+
+    private Path progressPath() {
+        return dir.resolve("progress.properties");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2 || args.length > 4) {
+            System.out.println("Usage: java SelfPlay outputDir games [threads] [millisPerMove]");
+            System.exit(0);
+        }
+        if (Game.BOARD_SIZE != 8) {
+            // The columns hold one long per color and 64 visit counts per position
+            System.out.println("SelfPlay only writes 8 x 8 games");
+            System.exit(0);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        SelfPlay selfPlay = new SelfPlay(Path.of(args[0]));
+        Warmup.run(System.out);
+        System.out.println("Seed " + selfPlay.seed);
+        if (args.length > 3)
+            selfPlay.config.set("simTime", args[3]);
+        try {
+            selfPlay.run(Integer.parseInt(args[1]), threads);
+        } finally {
+            selfPlay.close();
+        }
+    }
+}
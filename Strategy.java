@@ -1,4 +1,6 @@
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.SplittableRandom;
 
 public class Strategy {
     final static int pointTable[][] = new int[Game.WIDTH][Game.HEIGHT];
@@ -11,65 +13,101 @@ public class Strategy {
     // [2][1][1][0]
     // Credits for values go to: http://www.site-constructor.com/othello/Present/BoardLocationValue.html
 
-    final int CORNER = 50;
-    final int DIAGONAL = -10;
-    final int SECOND = -1;
-    final int THIRD = 5;
-    final int FOURTH = 2;
-    final int COMMON = 1;
-    final int STARTER = 0;
+    final static int CORNER = 50;
+    final static int DIAGONAL = -10;
+    final static int SECOND = -1;
+    final static int THIRD = 5;
+    final static int FOURTH = 2;
+    final static int COMMON = 1;
+    final static int STARTER = 0;
 
-    // Weight values used to determine priorities when examining potential moves
-    final double POSITIONWEIGHT = 5;
-    final double MOBILITYWEIGHT = 15;
-    final double ENDWEIGHT = 300;
+    // Weights, search depth and Monte Carlo limits used by this strategy
+    final EngineConfig config;
 
     // Used to check during minimax algorith
     final double INFINITE = 100000000;
 
-    // Used to determine how large search trees should be
-    // Depth 3 actually performs worse, there is some kind of logic error in my algorithm
-    // Depth 4 doesn't even return anything, I can't tell if it's because of the exponential growth or if there's a bug somewhere
-    final int MAXDEPTH = 2;
+    // The transposition table of the minimax search holds 2^TABLESIZE entries
+    final int TABLESIZE = 20;
+
+    // Number of threads of the minimax search and whether it prints nodes per second
+    // after every move, set with -Dothello.searchThreads=N and -Dothello.searchStats=true
+    final int SEARCHTHREADS = Integer.getInteger("othello.searchThreads", 1);
+    final boolean SEARCHSTATS = Boolean.getBoolean("othello.searchStats");
+
+    // ProbCut parameters fitted by ProbCutFit, set with -Dothello.probCut=file
+    // Without them the minimax search prunes nothing beyond alpha-beta
+    final String PROBCUTFILE = System.getProperty("othello.probCut");
+
+    private AlphaBeta search;
+    private MonteCarlo monteCarlo;
+
+    // Seed of the random strategy and of the Monte Carlo engine
+    private long seed = Seeds.BASE;
+    private SplittableRandom random = new SplittableRandom(seed);
 
     public Strategy() {
+        this(new EngineConfig());
+    }
+
+    public Strategy(EngineConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Restart the random moves of this strategy and of its Monte Carlo engine from a seed
+     *
+     * @param seed the seed, the same seed gives the same moves
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        random = new SplittableRandom(seed);
+        if (monteCarlo != null)
+            monteCarlo.setSeed(Seeds.derive(seed, 0));
+    }
+
+    // The point table is shared by every strategy and evaluator
+    static {
         fillPoints();
     }
 
     /**
-     * Manually fills in the points board, which is used for a simple point-based strategy
-     * Only supports 8 x 8 board
+     * Fills in the points board, which is used for a simple point-based strategy.
+     * The table is generated for any board size from the distances of a square to the
+     * nearest edges, so that the 8 x 8 board gets the quarter shown above: corners,
+     * the squares next to them, the edges, the inner squares and the starting squares.
      *
      * @return void
      */
-    public void fillPoints() {
-        // Set values for the top left quadrant
-        pointTable[1][1] = CORNER;
-        pointTable[2][2] = DIAGONAL;
-        pointTable[1][2] = pointTable[2][1] = SECOND;
-        pointTable[1][3] = pointTable[3][1] = THIRD;
-        pointTable[1][4] = pointTable[4][1] = FOURTH;
-        pointTable[2][3] = pointTable[2][4] = pointTable[3][2] = pointTable[3][3] =
-            pointTable[3][4] = pointTable[4][2] = pointTable[4][3] = COMMON;
-        pointTable[4][4] = STARTER;
-
-        // Duplicate values for top right quadrant
-        for (int i = 5; i <= 8; i++) {
-            for (int j = 1; j <= 4; j++) {
-                pointTable[j][i] = pointTable[(j)][9 - i];
-            }
-        }
-
-        // Duplicate values for bottom two quadrants
-        for (int i = 1; i <= 8; i++) {
-            for (int j = 5; j <= 8; j++) {
-                pointTable[j][i] = pointTable[9 - j][(i)];
+    public static void fillPoints() {
+        int half = Game.BOARD_SIZE / 2;
+        for (int i = 1; i <= Game.BOARD_SIZE; i++) {
+            for (int j = 1; j <= Game.BOARD_SIZE; j++) {
+                // Distances to the nearest row edge and column edge, 0 on the edge
+                int rowEdge = Math.min(i - 1, Game.BOARD_SIZE - i);
+                int colEdge = Math.min(j - 1, Game.BOARD_SIZE - j);
+                int near = Math.min(rowEdge, colEdge);
+                int far = Math.max(rowEdge, colEdge);
+                int points;
+                if (near == 0 && far == 0)
+                    points = CORNER;
+                else if (near == 0 && far == 1)
+                    points = SECOND;
+                else if (near == 1 && far == 1)
+                    points = DIAGONAL;
+                else if (near == 0)
+                    points = far == half - 1 ? FOURTH : THIRD;
+                else if (near == half - 1)
+                    points = STARTER;
+                else
+                    points = COMMON;
+                pointTable[i][j] = points;
             }
         }
 
         // Set values for out of bounds cells
-        for (int i = 0; i <= 9; i++) {
-            pointTable[i][0] = pointTable[i][9] = pointTable[0][i] = pointTable[9][i] = STARTER;
+        for (int i = 0; i < Game.WIDTH; i++) {
+            pointTable[i][0] = pointTable[i][Game.WIDTH - 1] = pointTable[0][i] = pointTable[Game.HEIGHT - 1][i] = STARTER;
         }
     }
 
@@ -83,12 +121,12 @@ public class Strategy {
      */
     public Game randStrategy(Game game, int color) {
 
-        int row = (int)(Math.random()*(game.BOARD_SIZE)) + 1;
-        int column = (int)(Math.random()*(game.BOARD_SIZE)) + 1;
+        int row = random.nextInt(game.BOARD_SIZE) + 1;
+        int column = random.nextInt(game.BOARD_SIZE) + 1;
 
         while (!game.legalMove(row,column,color,true)) {
-            row = (int)(Math.random()*(game.BOARD_SIZE)) + 1;
-            column = (int)(Math.random()*(game.BOARD_SIZE)) + 1;
+            row = random.nextInt(game.BOARD_SIZE) + 1;
+            column = random.nextInt(game.BOARD_SIZE) + 1;
         }
 
         game.board[row][column] = color;
@@ -105,10 +143,13 @@ public class Strategy {
     public Game pointStrategy(Game game, int color) {
         Move bestMove = new Move();
         Move currentMove = new Move();
+        long[] legal = game.moveBits(color);
 
         // Look for every legal move
         for (int i = 1; i <= Game.BOARD_SIZE; i++) {
             for (int j = 1; j <= Game.BOARD_SIZE; j++) {
+                if (!BoardBits.has(legal, BoardBits.square(j, i)))
+                    continue;
                 // Store the current move being checked
                 currentMove = game.pointMove(j, i, color, false, pointTable);
 
@@ -139,12 +180,11 @@ public class Strategy {
      * @return game    the resulting state of the game
      */
     public Game searchStrategy(Game game, int color) {
-        Node currentState = new Node(new Move(), game, color);
-        currentState = buildTree(currentState, MAXDEPTH);
-        //printTree(currentState);
-
-        Move bestMove = minimax(currentState, color);
-        //System.out.println("Best move is " + testMove.x + " " + testMove.y);
+        AlphaBeta search = alphaBeta();
+        Move bestMove = search.search(game, color, config.maxDepth);
+        if (SEARCHSTATS)
+            System.out.println(search.report());
+        //System.out.println("Best move is " + bestMove.x + " " + bestMove.y);
 
         if (bestMove.legal) {
             game.pointMove(bestMove.y, bestMove.x, color, true, pointTable);
@@ -154,6 +194,31 @@ public class Strategy {
         return game;
     }
 
+    /**
+     * The minimax search of this strategy, created on first use
+     */
+    public AlphaBeta alphaBeta() {
+        if (search == null)
+            search = new AlphaBeta(this, new TranspositionTable(TABLESIZE), SEARCHTHREADS, loadProbCut());
+        return search;
+    }
+
+    /**
+     * Reads the ProbCut parameters of the minimax search
+     *
+     * @return the parameters, null if none are configured or they cannot be read
+     */
+    private ProbCut loadProbCut() {
+        if (PROBCUTFILE == null)
+            return null;
+        try {
+            return ProbCut.load(PROBCUTFILE);
+        } catch (IOException e) {
+            System.out.println("Could not read ProbCut parameters, searching without: " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Creates a tree to explore potential moves
      *
@@ -266,16 +331,16 @@ public class Strategy {
             // Check to see if the game stored in this Node has ended
             if (check.end == -1) {
                 // Calculate the value based on position and mobility
-                min = check.position * POSITIONWEIGHT - check.mobility * MOBILITYWEIGHT;
+                min = check.position * config.positionWeight - check.mobility * config.mobilityWeight;
 
                 //System.out.println("Node: " + check.last.x + " " + check.last.y + " scores " + min + " points");
             } else if (check.end == color) {
                 // The player has won, return
-                min = ENDWEIGHT;
+                min = config.endWeight;
                 return min;
             } else if (check.end != color) {
                 // The player has lost or it is a tie, return
-                min = -ENDWEIGHT;
+                min = -config.endWeight;
                 return min;
             }
         }
@@ -306,16 +371,16 @@ public class Strategy {
             // Check to see if the game stored in this Node has ended
             if (check.end == -1) {
                 // Calculate the value based on position and mobility
-                max = -check.position * POSITIONWEIGHT + check.mobility * MOBILITYWEIGHT;
+                max = -check.position * config.positionWeight + check.mobility * config.mobilityWeight;
 
                 //System.out.println("Node: " + check.last.x + " " + check.last.y + " scores " + max + " points");
             } else if (check.end == color) {
                 // The player has won, return
-                max = ENDWEIGHT;
+                max = config.endWeight;
                 return max;
             } else if (check.end != color) {
                 // The player has lost or it is a tie, return
-                max = -ENDWEIGHT;
+                max = -config.endWeight;
                 return max;
             }
         }
@@ -358,17 +423,7 @@ public class Strategy {
      * @return result  the number of moves the player specified by color can make
      */
     public int mobilityCheck(Game game, int color) {
-        int result = 0;
-
-        for (int i = 1; i < game.HEIGHT - 1; i++) {
-            for (int j = 1; j < game.WIDTH - 1; j++) {
-                if ((game.legalMove(i, j, color, false))) {
-                    result++;
-                }
-            }
-        }
-
-        return result;
+        return BoardBits.count(game.moveBits(color));
     }
 
     /**
@@ -410,11 +465,19 @@ public class Strategy {
     }
 
     public Game monteCarloStrategy(Game game, int color) {
-        return MonteCarlo.makeMove(game, color, false);
+        return monteCarlo().makeMove(game, color, false);
     }
 
     public Game naiveMonteCarlo(Game game, int color) {
-        return MonteCarlo.makeMove(game, color, true);
+        return monteCarlo().makeMove(game, color, true);
+    }
+
+    private MonteCarlo monteCarlo() {
+        if (monteCarlo == null) {
+            monteCarlo = new MonteCarlo(config);
+            monteCarlo.setSeed(Seeds.derive(seed, 0));
+        }
+        return monteCarlo;
     }
 
     /**
@@ -447,8 +510,8 @@ public class Strategy {
      * Prints out the current scores for debugging purposes.
      */
     public void printScores() {
-        for (int i = 0; i <= 9; i++) {
-            for (int j = 0; j <= 9; j++) {
+        for (int i = 0; i < Game.HEIGHT; i++) {
+            for (int j = 0; j < Game.WIDTH; j++) {
                 System.out.print("[" + pointTable[i][j] + "]");
             }
             System.out.println();
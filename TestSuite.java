@@ -0,0 +1,406 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Strength per time on fixed positions with known best moves, in the style of the FFO
+ * endgame tests, as a quicker and steadier signal than engine matches. Every engine plays
+ * every position under every time budget, and the report gives the share of positions where
+ * it found a best move, the time it took to settle on it and its simulations or nodes per
+ * second.
+ * <p>
+ * A suite file has one position per line in the notation of Engine, followed by the best
+ * moves separated by commas and the exact final disc difference for the side to move with
+ * perfect play; '#' starts a comment. The suites are endgames solved exactly by generate, see
+ * suite/endgame.txt.
+ * <p>
+ * The time to a solution is when the engine last changed its mind to a best move: the
+ * snapshot of a Monte Carlo search, taken every SNAPSHOT_MILLIS, or the finished depth of
+ * Minimax, after which its choice stayed a best move. Minimax deepens until the budget is
+ * spent, abandons the depth it is in and plays the move of the last finished depth. Point
+ * ignores the budget.
+ * <p>
+ * Run as one of the following:<br>
+ * java TestSuite generate FILE COUNT [minEmpty] [maxEmpty]  (random endgames, solved exactly)<br>
+ * java TestSuite run FILE REPORT [ENGINE...]                (all four engines by default)<br>
+ * Engines are written as in Match. Options are set with JVM options:<br>
+ * -Dothello.suiteBudgets=MILLIS,...  (time budgets per position, 100,500,2000 by default)<br>
+ * -Dothello.suiteThreads=N           (positions searched at the same time, all cores by default)<br>
+ * The report is a CSV file with one row per engine and budget, and REPORT.positions.csv has
+ * one row per engine, budget and position.
+ */
+public class TestSuite {
+    private static final String BUDGETS = System.getProperty("othello.suiteBudgets", "100,500,2000");
+    private static final int THREADS = Integer.getInteger("othello.suiteThreads", Runtime.getRuntime().availableProcessors());
+    private static final String[] ENGINES = {"Point", "Minimax", "MonteCarlo", "NaiveMonteCarlo"};
+
+    // Interval of the Monte Carlo snapshots that time the solutions
+    private static final int SNAPSHOT_MILLIS = 10;
+
+    // Below this many empty squares the solver does not order its moves
+    private static final int ORDER_EMPTIES = 7;
+
+    /**
+     * One position of a suite
+     */
+    private static class Position {
+        String board;
+        String side;
+        Game game = new Game();
+        int turn;
+        ArrayList<String> best = new ArrayList<>();
+        int score;
+    }
+
+    /**
+     * What one engine did on one position
+     */
+    private static class Result {
+        boolean solved;
+        long timeToSolution;
+        long elapsed;
+        long work;
+        String move;
+    }
+
+    /**
+     * The searches of one engine on one thread
+     */
+    private static class Searches {
+        final Strategy strategy;
+        final MonteCarlo monteCarlo;
+
+        Searches(EngineConfig config) {
+            strategy = new Strategy(config);
+            monteCarlo = new MonteCarlo(config);
+        }
+    }
+
+    private final ArrayList<Position> positions = new ArrayList<>();
+    private final String[] engines;
+    private final int[] budgets;
+
+    // Results by engine, budget and position
+    private final Result[][][] results;
+
+    /**
+     * Read a suite
+     *
+     * @param file    suite file
+     * @param engines engines as in Match
+     * @param budgets milliseconds per position
+     * @throws IOException if the file cannot be read or has a malformed line
+     */
+    public TestSuite(Path file, String[] engines, int[] budgets) throws IOException {
+        this.engines = engines;
+        this.budgets = budgets;
+        try (BufferedReader in = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int comment = line.indexOf('#');
+                if (comment >= 0)
+                    line = line.substring(0, comment);
+                if (line.isBlank())
+                    continue;
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length != 4)
+                    throw new IOException("expected BOARD SIDE MOVES SCORE: " + line);
+                Position p = new Position();
+                p.board = fields[0];
+                p.side = fields[1];
+                try {
+                    p.turn = Engine.parsePosition(p.game, p.board, p.side);
+                    p.best.addAll(Arrays.asList(fields[2].split(",")));
+                    p.score = Integer.parseInt(fields[3]);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e.getMessage() + ": " + line);
+                }
+                positions.add(p);
+            }
+        }
+        for (String engine : engines) {
+            // Fail here and not in the threads
+            Match.type(engine);
+            Match.config(engine);
+        }
+        results = new Result[engines.length][budgets.length][positions.size()];
+    }
+
+    /**
+     * Run every engine on every position under every budget, on THREADS threads
+     */
+    public void run() throws InterruptedException {
+        int jobs = engines.length * budgets.length * positions.size();
+        AtomicInteger next = new AtomicInteger();
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread worker = new Thread(() -> {
+                // Engines of this thread by engine and budget, a search cannot be shared
+                HashMap<Integer, Searches> own = new HashMap<>();
+                int job;
+                while ((job = next.getAndIncrement()) < jobs) {
+                    int e = job / (budgets.length * positions.size());
+                    int b = job / positions.size() % budgets.length;
+                    int p = job % positions.size();
+                    Searches searches = own.computeIfAbsent(e * budgets.length + b, k -> searches(engines[e], budgets[b]));
+                    results[e][b][p] = solve(searches, engines[e], budgets[b], positions.get(p),
+                        Seeds.derive(Seeds.BASE, p));
+                }
+            }, "test-suite-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers)
+            worker.join();
+    }
+
+    /**
+     * Searches of an engine with a time budget
+     */
+    private static Searches searches(String spec, int budget) {
+        EngineConfig config = Match.config(spec);
+        config.set("simTime", Integer.toString(budget));
+        config.simGames = Integer.MAX_VALUE;
+        return new Searches(config);
+    }
+
+    private static Result solve(Searches searches, String spec, int budget, Position position, long seed) {
+        Strategy strategy = searches.strategy;
+        MonteCarlo monteCarlo = searches.monteCarlo;
+        strategy.setSeed(seed);
+        monteCarlo.setSeed(seed);
+        AIType type = Match.type(spec);
+        Result result = new Result();
+        long start = System.currentTimeMillis();
+        // Time of the last change of the chosen move, the move chosen since then and the
+        // work of the last snapshot
+        long[] settled = {0};
+        String[] chosen = {null};
+        long[] work = {0};
+        AnalysisListener listener = snapshot -> {
+            if (snapshot.lines.isEmpty())
+                return;
+            String move = snapshot.lines.get(0).move;
+            if (!move.equals(chosen[0])) {
+                chosen[0] = move;
+                settled[0] = System.currentTimeMillis() - start;
+            }
+            work[0] = snapshot.work;
+        };
+        switch (type) {
+            case MonteCarlo:
+            case NaiveMonteCarlo:
+                monteCarlo.listener = listener;
+                monteCarlo.snapshotMillis = SNAPSHOT_MILLIS;
+                monteCarlo.search(position.game, position.turn, type == AIType.NaiveMonteCarlo);
+                result.work = work[0];
+                break;
+            case Minimax:
+                AlphaBeta search = strategy.alphaBeta();
+                search.listener = listener;
+                // One deepening search, cut off at the budget once the first depth is done
+                search.search(position.game, position.turn, BoardBits.SQUARES, budget);
+                result.work = work[0];
+                break;
+            default:
+                Game after = new Player(strategy, type, position.turn).strategy(new Game(position.game), position.turn);
+                int[] move = Game.findMove(Util.deepCopy(position.game.board), after.board);
+                chosen[0] = Engine.squareName(move[0], move[1]);
+        }
+        result.elapsed = System.currentTimeMillis() - start;
+        result.move = chosen[0];
+        result.solved = position.best.contains(chosen[0]);
+        result.timeToSolution = type == AIType.Minimax || type == AIType.MonteCarlo
+            || type == AIType.NaiveMonteCarlo ? settled[0] : result.elapsed;
+        return result;
+    }
+
+    /**
+     * Write the report and print the summary
+     *
+     * @param report CSV file of the summary
+     * @throws IOException if a file cannot be written
+     */
+    public void report(Path report) throws IOException {
+        Path details = report.resolveSibling(report.getFileName() + ".positions.csv");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(report));
+             PrintWriter detail = new PrintWriter(Files.newBufferedWriter(details))) {
+            out.println("engine,budget,positions,solved,solve_rate,mean_time_to_solution,work_per_second,seed");
+            detail.println("engine,budget,position,move,solved,time_to_solution,elapsed,work");
+            System.out.printf("%-24s %7s %8s %10s %12s%n", "engine", "budget", "solved", "tts ms", "work/s");
+            for (int e = 0; e < engines.length; e++) {
+                for (int b = 0; b < budgets.length; b++) {
+                    int solved = 0;
+                    long tts = 0;
+                    long work = 0;
+                    long elapsed = 0;
+                    for (int p = 0; p < positions.size(); p++) {
+                        Result r = results[e][b][p];
+                        if (r.solved) {
+                            solved++;
+                            tts += r.timeToSolution;
+                        }
+                        work += r.work;
+                        elapsed += r.elapsed;
+                        detail.printf("%s,%d,%d,%s,%b,%d,%d,%d%n", engines[e], budgets[b], p, r.move, r.solved,
+                            r.timeToSolution, r.elapsed, r.work);
+                    }
+                    double rate = solved * 1.0 / positions.size();
+                    double meanTts = solved == 0 ? 0 : tts * 1.0 / solved;
+                    double workPerSecond = work * 1000.0 / Math.max(1, elapsed);
+                    out.printf("%s,%d,%d,%d,%.4f,%.1f,%.0f,%d%n", engines[e], budgets[b], positions.size(), solved,
+                        rate, meanTts, workPerSecond, Seeds.BASE);
+                    System.out.printf("%-24s %7d %7.1f%% %10.1f %12.0f%n", engines[e], budgets[b], rate * 100, meanTts,
+                        workPerSecond);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write random endgames with their exact solutions
+     *
+     * @param file     suite file to write
+     * @param count    number of positions
+     * @param minEmpty fewest empty squares
+     * @param maxEmpty most empty squares
+     */
+    public static void generate(Path file, int count, int minEmpty, int maxEmpty) throws IOException {
+        SplittableRandom random = new SplittableRandom(Seeds.BASE);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("# java TestSuite generate, seed " + Seeds.BASE + ", " + minEmpty + " to " + maxEmpty
+                + " empty squares");
+            out.println("# BOARD SIDE BEST_MOVES DISC_DIFFERENCE");
+            int written = 0;
+            while (written < count) {
+                int empties = minEmpty + random.nextInt(maxEmpty - minEmpty + 1);
+                Game game = new Game();
+                game.init();
+                int turn = Game.BLACK;
+                int[] diskCount = game.getDiskCount();
+                while (!game.endReached() && BoardBits.SQUARES - diskCount[Game.BLACK] - diskCount[Game.WHITE] > empties) {
+                    ArrayList<int[]> moves = game.getLegalMoves(turn);
+                    if (!moves.isEmpty()) {
+                        int[] move = moves.get(random.nextInt(moves.size()));
+                        game.placeDisk(move[0], move[1], turn);
+                        diskCount = game.getDiskCount();
+                    }
+                    turn = Game.toggleTurn(turn);
+                }
+                long own = BitBoard.toBits(game.board, turn);
+                long opp = BitBoard.toBits(game.board, Game.toggleTurn(turn));
+                long moves = BitBoard.legalMoves(own, opp);
+                // A position needs a choice, and not every move may be best
+                if (Long.bitCount(moves) < 2)
+                    continue;
+                int best = -BoardBits.SQUARES - 1;
+                ArrayList<String> bestMoves = new ArrayList<>();
+                for (long m = moves; m != 0; m &= m - 1) {
+                    int square = Long.numberOfTrailingZeros(m);
+                    long flips = BitBoard.flips(own, opp, square);
+                    // A window just below the best so far tells ties from worse moves
+                    int value = -solve(opp ^ flips, own | flips | 1L << square, -BoardBits.SQUARES - 1, -(best - 1), false);
+                    if (value > best) {
+                        best = value;
+                        bestMoves.clear();
+                    }
+                    if (value == best)
+                        bestMoves.add(AnalysisSnapshot.squareName(square));
+                }
+                if (bestMoves.size() == Long.bitCount(moves))
+                    continue;
+                StringBuilder board = new StringBuilder();
+                for (int i = 1; i <= Game.BOARD_SIZE; i++)
+                    for (int j = 1; j <= Game.BOARD_SIZE; j++)
+                        board.append(game.board[i][j] == Game.BLACK ? '*' : game.board[i][j] == Game.WHITE ? 'O' : '-');
+                out.println(board + " " + (turn == Game.BLACK ? '*' : 'O') + " " + String.join(",", bestMoves) + " "
+                    + best);
+                written++;
+                System.out.println(written + ": " + empties + " empty, best " + bestMoves + " " + best);
+            }
+        }
+    }
+
+    /**
+     * Exact negamax value of an endgame: final own disks minus opponent disks, empty squares
+     * counting for no one, as Game.getWinner counts them
+     *
+     * @param own    bitboard of the player to move
+     * @param opp    bitboard of the other player
+     * @param alpha  lower bound of the window
+     * @param beta   upper bound of the window
+     * @param passed whether the other player just passed
+     * @return the value, or a bound on it outside the window
+     */
+    private static int solve(long own, long opp, int alpha, int beta, boolean passed) {
+        long moves = BitBoard.legalMoves(own, opp);
+        if (moves == 0) {
+            if (passed)
+                return Long.bitCount(own) - Long.bitCount(opp);
+            return -solve(opp, own, -beta, -alpha, true);
+        }
+        int[] squares = new int[Long.bitCount(moves)];
+        int n = 0;
+        for (long m = moves; m != 0; m &= m - 1)
+            squares[n++] = Long.numberOfTrailingZeros(m);
+        if (Long.bitCount(~(own | opp)) >= ORDER_EMPTIES) {
+            // Moves that leave the opponent fewest replies first
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++) {
+                long flips = BitBoard.flips(own, opp, squares[i]);
+                keys[i] = (long) Long.bitCount(BitBoard.legalMoves(opp ^ flips, own | flips | 1L << squares[i])) << 8 | squares[i];
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < n; i++)
+                squares[i] = (int) (keys[i] & 0xff);
+        }
+        int best = -BoardBits.SQUARES - 1;
+        for (int i = 0; i < n; i++) {
+            long flips = BitBoard.flips(own, opp, squares[i]);
+            int value = -solve(opp ^ flips, own | flips | 1L << squares[i], -beta, -alpha, false);
+            if (value > best) {
+                best = value;
+                if (value > alpha) {
+                    alpha = value;
+                    if (alpha >= beta)
+                        break;
+                }
+            }
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean generate = args.length >= 3 && args.length <= 5 && args[0].equals("generate");
+        boolean run = args.length >= 3 && args[0].equals("run");
+        if (!generate && !run) {
+            System.out.println("Usage: java TestSuite generate FILE COUNT [minEmpty] [maxEmpty]");
+            System.out.println("       java TestSuite run FILE REPORT [ENGINE...]");
+            System.exit(0);
+        }
+        if (Game.BOARD_SIZE != 8) {
+            // The solver works on the bitboards of BitBoard
+            System.out.println("TestSuite only runs 8 x 8 positions");
+            System.exit(0);
+        }
+        System.out.println("seed " + Seeds.BASE);
+        if (generate) {
+            generate(Path.of(args[1]), Integer.parseInt(args[2]), args.length > 3 ? Integer.parseInt(args[3]) : 10,
+                args.length > 4 ? Integer.parseInt(args[4]) : 16);
+            return;
+        }
+        String[] engines = args.length > 3 ? Arrays.copyOfRange(args, 3, args.length) : ENGINES;
+        int[] budgets = Arrays.stream(BUDGETS.split(",")).mapToInt(Integer::parseInt).toArray();
+        TestSuite suite = new TestSuite(Path.of(args[1]), engines, budgets);
+        Warmup.run(System.out);
+        suite.run();
+        suite.report(Path.of(args[2]));
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Fixed-size hash table of search results for the alpha-beta search.
+ * Every slot is a pair of longs: the position key and a packed entry holding
+ * depth, bound type, score and best move. A slot is replaced when the new result
+ * was searched at least as deep, or when the stored one is from an older search.
+ * <p>
+ * The table is shared by all search threads without locking. The key is stored
+ * xor-ed with the entry, so a slot torn by two concurrent writers fails the key
+ * check and reads as empty.
+ */
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+
+    /**
+     * Move value stored when a node has no best move (pass or all moves failed low)
+     */
+    public static final int NO_MOVE = 0xff;
+
+    // Layout of a packed entry, from the lowest bit
+    // [0, 32)  score as float bits
+    // [32, 40) depth
+    // [40, 42) bound type
+    // [48, 56) best move as bit index of BitBoard
+    // [56, 62) search generation
+    // 63       set for every stored entry
+    private static final long VALID = 1L << 63;
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int mask;
+    private volatile int generation;
+
+    /**
+     * @param sizeLog2 the table holds 2^sizeLog2 entries
+     */
+    public TranspositionTable(int sizeLog2) {
+        keys = new long[1 << sizeLog2];
+        entries = new long[1 << sizeLog2];
+        mask = (1 << sizeLog2) - 1;
+    }
+
+    /**
+     * Start a new search, entries of earlier searches may now be replaced by shallower ones
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0x3f;
+    }
+
+    /**
+     * Look up a position
+     *
+     * @param key position hash
+     * @return packed entry, 0 if the position is not stored
+     */
+    public long probe(long key) {
+        int i = (int) key & mask;
+        long entry = entries[i];
+        if (entry != 0 && (keys[i] ^ entry) == key)
+            return entry;
+        return 0;
+    }
+
+    /**
+     * Store a search result, keeping the deeper entry of the current search on collision
+     *
+     * @param key   position hash
+     * @param depth remaining depth the position was searched to
+     * @param bound EXACT, LOWER or UPPER
+     * @param score score from the point of view of the side to move
+     * @param move  best move as bit index, or NO_MOVE
+     */
+    public void store(long key, int depth, int bound, double score, int move) {
+        int i = (int) key & mask;
+        long old = entries[i];
+        if (old != 0 && (keys[i] ^ old) != key && generation(old) == generation && depth(old) > depth)
+            return;
+        long entry = VALID
+            | ((long) generation << 56)
+            | ((long) (move & 0xff) << 48)
+            | ((long) bound << 40)
+            | ((long) (depth & 0xff) << 32)
+            | (Float.floatToIntBits((float) score) & 0xffffffffL);
+        keys[i] = key ^ entry;
+        entries[i] = entry;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xff;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    public static double score(long entry) {
+        return Float.intBitsToFloat((int) entry);
+    }
+
+    public static int move(long entry) {
+        return (int) (entry >>> 48) & 0xff;
+    }
+
+    private static int generation(long entry) {
+        return (int) (entry >>> 56) & 0x3f;
+    }
+}
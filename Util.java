@@ -1,7 +1,3 @@
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
 public class Util {
 
     public static int[][] deepCopy(int[][] arr) {
@@ -11,14 +7,6 @@ public class Util {
         return copy;
     }
 
-    public static List<Integer> toFlatList(int[][] arr) {
-        List<Integer> copy = new ArrayList<>();
-        for (int[] a: arr)
-            for (int e: a)
-                copy.add(e);
-        return copy;
-    }
-
     /**
      * Prints out the board for debugging purposes.
      */
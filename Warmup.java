@@ -0,0 +1,112 @@
+import java.io.PrintStream;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * Runs short Monte Carlo searches before the first timed search, until the JIT compiler has
+ * compiled the hot methods (move generation, placeDisk and the rollouts) and the search runs
+ * at its steady speed. Without it the first moves of a fresh JVM run mostly interpreted code
+ * and get far fewer simulations than later moves, which skews games and benchmarks.
+ * <p>
+ * Each round runs the same search, ROUND_SIMULATIONS simulations of one position from the same
+ * seed, and measures simulations per second, so rounds differ only in speed. The warm-up ends
+ * once the mean speed of the last STEADY_ROUNDS rounds is within the tolerance of the mean of
+ * the STEADY_ROUNDS before them and the JIT compiler spent less than QUIET_MILLIS compiling in
+ * those rounds, or when the time limit is reached. Speed alone settles for a while on the code
+ * of the first compiler tier, before the optimizing tier makes it about twice as fast.
+ * Compiled code is shared by all threads, so one thread warms up the engines of all. The
+ * searches use their own random moves and leave the seed of the run alone.
+ * <p>
+ * Options are set with JVM options:<br>
+ * -Dothello.warmup=MILLIS              (most time spent warming up, 10000 by default, 0 turns it off)<br>
+ * -Dothello.warmupTolerance=FRACTION   (change of mean speed taken as steady, 0.1 by default)
+ */
+public class Warmup {
+    private static final int MAX_MILLIS = Integer.getInteger("othello.warmup", 10000);
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("othello.warmupTolerance", "0.1"));
+    private static final int ROUND_SIMULATIONS = 2000;
+    private static final int STEADY_ROUNDS = 4;
+    private static final int QUIET_MILLIS = 5;
+
+    // Random moves of the warm-up position and the searches
+    private static final long SEED = 1;
+
+    // Plies played from the start to reach a position with some choice
+    private static final int OPENING_PLIES = 10;
+
+    private static boolean done;
+
+    /**
+     * Warm up once per JVM, later calls return at once
+     *
+     * @return how long it took and the speed it reached, null if it is off or already done
+     */
+    public static synchronized String run() {
+        if (done || MAX_MILLIS <= 0)
+            return null;
+        done = true;
+        SplittableRandom random = new SplittableRandom(SEED);
+        Game game = new Game();
+        game.init();
+        int turn = Game.BLACK;
+        for (int ply = 0; ply < OPENING_PLIES; ply++) {
+            ArrayList<int[]> moves = game.getLegalMoves(turn);
+            if (!moves.isEmpty()) {
+                int[] move = moves.get(random.nextInt(moves.size()));
+                game.placeDisk(move[0], move[1], turn);
+            }
+            turn = Game.toggleTurn(turn);
+        }
+        EngineConfig config = new EngineConfig();
+        config.set("simTime", Integer.toString(Integer.MAX_VALUE));
+        config.simGames = ROUND_SIMULATIONS;
+        MonteCarlo monteCarlo = new MonteCarlo(config);
+
+        CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+        boolean timed = compiler != null && compiler.isCompilationTimeMonitoringSupported();
+
+        long start = System.nanoTime();
+        ArrayList<Double> rates = new ArrayList<>();
+        // Total compilation time in milliseconds before each round
+        ArrayList<Long> compiling = new ArrayList<>();
+        boolean steady = false;
+        while (!steady && (System.nanoTime() - start) / 1000000 < MAX_MILLIS) {
+            compiling.add(timed ? compiler.getTotalCompilationTime() : 0);
+            monteCarlo.setSeed(SEED);
+            long begin = System.nanoTime();
+            MCNode root = monteCarlo.search(game, turn, false);
+            rates.add(root.totalSim * 1e9 / (System.nanoTime() - begin));
+            int n = rates.size();
+            if (n >= 2 * STEADY_ROUNDS) {
+                double last = mean(rates, n - STEADY_ROUNDS, n);
+                double before = mean(rates, n - 2 * STEADY_ROUNDS, n - STEADY_ROUNDS);
+                long compiled = (timed ? compiler.getTotalCompilationTime() : 0) - compiling.get(n - 2 * STEADY_ROUNDS);
+                steady = Math.abs(last - before) <= TOLERANCE * before && compiled < QUIET_MILLIS;
+            }
+        }
+        int n = rates.size();
+        return String.format("warm-up %.1f s, %d rounds, %.0f to %.0f simulations per second%s",
+            (System.nanoTime() - start) / 1e9, n, rates.get(0), mean(rates, Math.max(0, n - STEADY_ROUNDS), n),
+            steady ? "" : ", not steady");
+    }
+
+    /**
+     * Warm up once per JVM and print how it went
+     *
+     * @param out where to print the report
+     */
+    public static void run(PrintStream out) {
+        String report = run();
+        if (report != null)
+            out.println(report);
+    }
+
+    private static double mean(ArrayList<Double> values, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++)
+            sum += values.get(i);
+        return sum / (to - from);
+    }
+}
@@ -0,0 +1,70 @@
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Batch kernel on the incubating Vector API, handling as many boards per instruction as the
+ * CPU has 64-bit lanes. It is kept out of the main directory so that the rest of the program
+ * builds without the incubator module. To use it, build and run with the module:<br>
+ * javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorBatchKernel.java<br>
+ * java --add-modules jdk.incubator.vector ...<br>
+ * BatchBoards picks it up when the class and the module are both present.
+ */
+public class VectorBatchKernel implements BatchKernel {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    public void legalMoves(long[] own, long[] opp, long[] moves, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            LongVector o = LongVector.fromArray(SPECIES, own, i);
+            LongVector p = LongVector.fromArray(SPECIES, opp, i);
+            LongVector empty = o.or(p).not();
+            LongVector result = LongVector.zero(SPECIES);
+            for (int d = 0; d < BitBoard.SHIFTS.length; d++) {
+                LongVector run = shift(o, d).and(p);
+                for (int k = 0; k < 5; k++)
+                    run = run.or(shift(run, d).and(p));
+                result = result.or(shift(run, d).and(empty));
+            }
+            result.intoArray(moves, i);
+        }
+        // The boards past the last full vector
+        for (; i < n; i++)
+            moves[i] = BitBoard.legalMoves(own[i], opp[i]);
+    }
+
+    public void play(long[] own, long[] opp, long[] move, int n) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            LongVector o = LongVector.fromArray(SPECIES, own, i);
+            LongVector p = LongVector.fromArray(SPECIES, opp, i);
+            LongVector m = LongVector.fromArray(SPECIES, move, i);
+            LongVector flips = LongVector.zero(SPECIES);
+            for (int d = 0; d < BitBoard.SHIFTS.length; d++) {
+                LongVector run = shift(m, d).and(p);
+                for (int k = 0; k < 5; k++)
+                    run = run.or(shift(run, d).and(p));
+                // The run only flips where an own disk closes it
+                VectorMask<Long> closed = shift(run, d).and(o).compare(VectorOperators.NE, 0);
+                flips = flips.blend(flips.or(run), closed);
+            }
+            o.or(m).or(flips).intoArray(own, i);
+            p.and(flips.not()).intoArray(opp, i);
+        }
+        // The boards past the last full vector
+        for (; i < n; i++) {
+            if (move[i] == 0)
+                continue;
+            long flips = BitBoard.flips(own[i], opp[i], Long.numberOfTrailingZeros(move[i]));
+            own[i] |= move[i] | flips;
+            opp[i] &= ~flips;
+        }
+    }
+
+    private static LongVector shift(LongVector b, int direction) {
+        int s = BitBoard.SHIFTS[direction];
+        LongVector shifted = s > 0 ? b.lanewise(VectorOperators.LSHL, s) : b.lanewise(VectorOperators.LSHR, -s);
+        return shifted.and(BitBoard.SHIFT_MASKS[direction]);
+    }
+}